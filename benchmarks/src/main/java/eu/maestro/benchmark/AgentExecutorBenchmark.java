@@ -0,0 +1,103 @@
+package eu.maestro.benchmark;
+
+import eu.maestro.agent.Phase;
+import eu.maestro.orchestrator.AgentExecutors;
+import eu.maestro.orchestrator.Orchestrator;
+import eu.maestro.simulation.LatencyDistribution;
+import eu.maestro.simulation.SimulatedPhases;
+import eu.maestro.simulation.Simulation;
+import eu.maestro.store.StatusStore;
+import eu.maestro.time.SystemScheduler;
+import eu.maestro.util.DeploymentGraph;
+import eu.maestro.util.TopologyGenerator;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole deployment in real time, through the regular Orchestrator and
+ * agents on each executor of AgentExecutors, with phases of 10 ms. The score
+ * is the time until every node has started; the peak of live threads during
+ * the deployment is printed once per iteration.
+ *
+ * @author Panagiotis Gouvas
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AgentExecutorBenchmark {
+
+    private static final long PHASE_MILLIS = 10;
+
+    @Param({AgentExecutors.EXECUTOR_THREAD, AgentExecutors.EXECUTOR_POOL, AgentExecutors.EXECUTOR_VIRTUAL})
+    public String mode;
+
+    @Param({"100", "1000", "10000"})
+    public int nodes;
+
+    private StatusStore store;
+    private DeploymentGraph graph;
+    private final Map<Phase, LatencyDistribution> latencies = new EnumMap<>(Phase.class);
+    private int runs = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        Logger.getLogger("eu.maestro").setLevel(Level.WARNING);
+        store = StatusStore.acquire(Simulation.LOCAL_CONFIGURATION);
+        graph = TopologyGenerator.kary(nodes, 4);
+        for (Phase phase : Phase.values()) {
+            latencies.put(phase, LatencyDistribution.fixed(PHASE_MILLIS));
+        }
+    }//EoM
+
+    @TearDown
+    public void teardown() {
+        store.release();
+    }//EoM
+
+    @Benchmark
+    public boolean deploy() throws InterruptedException, ExecutionException {
+        String deploymentid = "executor-" + (++runs);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        ExecutorService executor = AgentExecutors.create(mode, deploymentid);
+        try {
+            Orchestrator orchestrator = new Orchestrator(graph, deploymentid, new SystemScheduler(executor), new SimulatedPhases(latencies, new Random(0)));
+            if (!orchestrator.start().get()) {
+                throw new IllegalStateException("Deployment " + deploymentid + " did not complete");
+            }
+            System.out.println("peak live threads with " + mode + " for " + nodes + " nodes: " + threads.getPeakThreadCount());
+            orchestrator.getAgentTermination().get();
+            return true;
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            //the statuses of the next deployment start from an empty store
+            store.getCache().clear();
+        }
+    }//EoM
+
+}//EoC
@@ -0,0 +1,124 @@
+package eu.maestro.benchmark;
+
+import eu.maestro.agent.exception.DownloadImageException;
+import eu.maestro.image.BlobDownloader;
+import eu.maestro.image.RegistryServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Download of one verified blob from a RegistryServer on the loopback
+ * interface, unlimited or with the bandwidth of each connection limited: with
+ * the BlobDownloader, in parallel range requests written to the file from
+ * direct buffers, against a single HttpURLConnection stream copied to the
+ * file through a DigestInputStream. megabytes divided by the score is the
+ * throughput in MB/ms.
+ *
+ * @author Panagiotis Gouvas
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlobDownloadBenchmark {
+
+    @Param({"64"})
+    public int megabytes;
+
+    @Param({"1", "4"})
+    public int connections;
+
+    //bytes per second of every connection, 0 for no limit
+    @Param({"0", "50000000"})
+    public long bandwidth;
+
+    private Path directory;
+    private RegistryServer server;
+    private BlobDownloader downloader;
+    private URI blob;
+    private String digest;
+    private Path target;
+
+    @Setup
+    public void setup() throws IOException, NoSuchAlgorithmException {
+        directory = Files.createTempDirectory("maestro-registry");
+        byte[] content = new byte[megabytes * 1024 * 1024];
+        new Random(42).nextBytes(content);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+        digest = "sha256:" + hex;
+        Path file = directory.resolve("blobs").resolve("sha256").resolve(hex.toString());
+        Files.createDirectories(file.getParent());
+        Files.write(file, content);
+        server = new RegistryServer(directory, 0, bandwidth);
+        blob = server.getUri().resolve("blobs/sha256/" + hex);
+        downloader = new BlobDownloader(connections, 1024 * 1024, 30000);
+        target = directory.resolve("download.partial");
+    }//EoM
+
+    @TearDown
+    public void teardown() throws IOException {
+        System.out.println();
+        System.out.println(downloader);
+        server.stop();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }//EoM
+
+    @Benchmark
+    public long ranged() throws IOException, DownloadImageException {
+        Files.deleteIfExists(target);
+        downloader.download(blob, digest, target);
+        return Files.size(target);
+    }//EoM
+
+    @Benchmark
+    public long streamed() throws IOException, NoSuchAlgorithmException {
+        Files.deleteIfExists(target);
+        HttpURLConnection connection = (HttpURLConnection) blob.toURL().openConnection();
+        MessageDigest hash = MessageDigest.getInstance("SHA-256");
+        try (InputStream in = new DigestInputStream(connection.getInputStream(), hash)) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            connection.disconnect();
+        }
+        StringBuilder hex = new StringBuilder("sha256:");
+        for (byte b : hash.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        if (!hex.toString().equals(digest)) {
+            throw new IOException("Digest mismatch");
+        }
+        return Files.size(target);
+    }//EoM
+
+}//EoC
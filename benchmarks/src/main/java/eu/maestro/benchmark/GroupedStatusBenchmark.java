@@ -0,0 +1,123 @@
+package eu.maestro.benchmark;
+
+import static eu.maestro.agent.Agent.STATUS_STARTED;
+import eu.maestro.store.StatusKey;
+import eu.maestro.store.StatusStore;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Orchestrator sweep and dependency fan-in read of one deployment on a
+ * cluster of embedded cache managers joined over the in-JVM loopback stack of
+ * infinispan-dist.xml. The statuses are read from a member that does not own
+ * them, once from the default cache, where the keys of the deployment are
+ * grouped, and once from a copy of it with grouping disabled, where they are
+ * scattered over all members.
+ *
+ * @author Panagiotis Gouvas
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.net.preferIPv4Stack=true", "-Dmaestro.jgroups.stack=loopback", "-Dmaestro.cluster=benchmark"})
+public class GroupedStatusBenchmark {
+
+    private static final String DEPLOYMENT = "bench";
+    private static final String UNGROUPED = "ungrouped";
+
+    @Param({"4"})
+    public int members;
+
+    @Param({"100", "1000"})
+    public int nodes;
+
+    @Param({"8"})
+    public int fanin;
+
+    private final List<DefaultCacheManager> managers = new ArrayList<>();
+    private Cache<StatusKey, Integer> grouped;
+    private Cache<StatusKey, Integer> ungrouped;
+    private Set<StatusKey> keyset;
+    private Set<StatusKey> dependencies;
+
+    @Setup
+    public void setup() throws IOException {
+        for (int i = 0; i < members; i++) {
+            DefaultCacheManager cachemngr = new DefaultCacheManager(StatusStore.DISTRIBUTED_CONFIGURATION);
+            cachemngr.defineConfiguration(UNGROUPED, new ConfigurationBuilder().read(cachemngr.getDefaultCacheConfiguration())
+                    .clustering().hash().groups().enabled(false).build());
+            cachemngr.getCache();
+            cachemngr.getCache(UNGROUPED);
+            managers.add(cachemngr);
+        }
+        StatusKey[] keys = StatusStore.keys(DEPLOYMENT, nodes);
+        keyset = new HashSet<>(Arrays.asList(keys));
+        dependencies = new HashSet<>(Arrays.asList(keys).subList(1, fanin + 1));
+        Cache<StatusKey, Integer> writer = managers.get(0).getCache();
+        for (StatusKey key : keys) {
+            writer.put(key, STATUS_STARTED);
+            managers.get(0).<StatusKey, Integer>getCache(UNGROUPED).put(key, STATUS_STARTED);
+        }
+        //read from a member that does not own the deployment
+        for (DefaultCacheManager cachemngr : managers) {
+            Cache<StatusKey, Integer> cache = cachemngr.getCache();
+            if (!cache.getAdvancedCache().getDistributionManager().getCacheTopology().isReadOwner(keys[0])) {
+                grouped = cache;
+                ungrouped = cachemngr.getCache(UNGROUPED);
+                break;
+            }
+        }
+    }//EoM
+
+    @TearDown
+    public void teardown() {
+        //coordinator last, so the cluster does not recover on the way down
+        for (int i = managers.size() - 1; i >= 0; i--) {
+            managers.get(i).stop();
+        }
+    }//EoM
+
+    @Benchmark
+    public Map<StatusKey, Integer> sweepGrouped() {
+        return grouped.getAdvancedCache().getAll(keyset);
+    }//EoM
+
+    @Benchmark
+    public Map<StatusKey, Integer> sweepUngrouped() {
+        return ungrouped.getAdvancedCache().getAll(keyset);
+    }//EoM
+
+    @Benchmark
+    public Map<StatusKey, Integer> dependenciesGrouped() {
+        return grouped.getAdvancedCache().getAll(dependencies);
+    }//EoM
+
+    @Benchmark
+    public Map<StatusKey, Integer> dependenciesUngrouped() {
+        return ungrouped.getAdvancedCache().getAll(dependencies);
+    }//EoM
+
+}//EoC
@@ -0,0 +1,154 @@
+package eu.maestro.benchmark;
+
+import eu.maestro.probe.ProbeEngine;
+import eu.maestro.probe.ProbeTarget;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A wave of readiness probes, as when a level of containers has been started
+ * together, all against one loopback server that accepts every connection
+ * and answers every HTTP request with 200. The probes run on the selector
+ * threads of one ProbeEngine and their results are delivered on the calling
+ * thread.
+ *
+ * @author Panagiotis Gouvas
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProbeEngineBenchmark {
+
+    private static final byte[] RESPONSE = "HTTP/1.1 200 OK\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    @Param({"100", "2000"})
+    public int probes;
+
+    @Param({"1", "2"})
+    public int selectors;
+
+    private ProbeEngine engine;
+    private Selector selector;
+    private ServerSocketChannel server;
+    private Thread responder;
+    private ProbeTarget tcp;
+    private ProbeTarget http;
+
+    @Setup
+    public void setup() throws IOException {
+        engine = new ProbeEngine(selectors, 10, 1000, 2.0, 0.2, 2000);
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("127.0.0.1", 0), 8192);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+        tcp = ProbeTarget.tcp("127.0.0.1", port);
+        http = ProbeTarget.http("127.0.0.1", port, "/health");
+        responder = new Thread(this::respond, "responder");
+        responder.setDaemon(true);
+        responder.start();
+    }//EoM
+
+    @TearDown
+    public void teardown() throws IOException {
+        System.out.println();
+        System.out.println(engine);
+        engine.close();
+        selector.close();
+        server.close();
+    }//EoM
+
+    @Benchmark
+    public int tcpProbes() {
+        return wave(tcp);
+    }//EoM
+
+    @Benchmark
+    public int httpProbes() {
+        return wave(http);
+    }//EoM
+
+    private int wave(ProbeTarget target) {
+        List<CompletableFuture<Void>> results = new ArrayList<>(probes);
+        for (int i = 0; i < probes; i++) {
+            results.add(engine.probe(target, 10000, Runnable::run));
+        }
+        for (CompletableFuture<Void> result : results) {
+            result.join();
+        }
+        return results.size();
+    }//EoM
+
+    //answers once the end of the request headers has arrived
+    private void respond() {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        try {
+            while (selector.isOpen()) {
+                selector.select();
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    if (key.isAcceptable()) {
+                        SocketChannel channel;
+                        while ((channel = server.accept()) != null) {
+                            channel.configureBlocking(false);
+                            channel.register(selector, SelectionKey.OP_READ, new StringBuilder());
+                        }
+                    } else if (key.isReadable()) {
+                        SocketChannel channel = (SocketChannel) key.channel();
+                        ((Buffer) buffer).clear();
+                        int count;
+                        try {
+                            count = channel.read(buffer);
+                        } catch (IOException ex) {
+                            count = -1;
+                        }
+                        StringBuilder request = (StringBuilder) key.attachment();
+                        if (count > 0) {
+                            request.append(new String(buffer.array(), 0, count, StandardCharsets.US_ASCII));
+                        }
+                        if (request.indexOf("\r\n\r\n") >= 0) {
+                            channel.write(ByteBuffer.wrap(RESPONSE));
+                        }
+                        if (count < 0 || request.indexOf("\r\n\r\n") >= 0) {
+                            key.cancel();
+                            channel.close();
+                        }
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            //closed on teardown
+        }
+    }//EoM
+
+}//EoC
@@ -0,0 +1,161 @@
+package eu.maestro.benchmark;
+
+import eu.maestro.agent.Agent;
+import eu.maestro.agent.Phase;
+import eu.maestro.orchestrator.AgentExecutors;
+import eu.maestro.orchestrator.Orchestrator;
+import eu.maestro.simulation.LatencyDistribution;
+import eu.maestro.simulation.SimulatedPhases;
+import eu.maestro.simulation.Simulation;
+import eu.maestro.store.StatusStore;
+import eu.maestro.time.SystemScheduler;
+import eu.maestro.util.DeploymentGraph;
+import eu.maestro.util.TopologyGenerator;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Deploys synthetic topologies end to end in real time, through the regular
+ * Orchestrator and agents on the executor of AgentExecutors, with phases of
+ * fixed duration. For every topology it prints the time until every node
+ * has started against the lower bound of its critical path, INITIALIZE +
+ * DOWNLOAD + levels * (START + CHECK), which is what the orchestration adds.
+ * It also prints the peak of live threads, the peak heap (the sum of the
+ * peaks of the heap pools) and the heap still held after the deployment,
+ * and the reads and writes sent to the status store. Topologies whose
+ * lower bound exceeds the agent timeout are skipped.
+ *
+ * The store is the local cache of the simulation unless
+ * maestro.infinispan.config is set; push scheduling and the executor follow
+ * their usual properties.
+ *
+ * Usage: java -cp benchmarks.jar eu.maestro.benchmark.ScaleBenchmark
+ * [shapes] [sizes] [arity] [seed], e.g. wide,deep,kary,random
+ * 100,1000,10000,100000 4 42
+ *
+ * @author Panagiotis Gouvas
+ */
+public class ScaleBenchmark {
+
+    private static final long INITIALIZE_MILLIS = 100;
+    private static final long DOWNLOAD_MILLIS = 400;
+    private static final long START_MILLIS = 20;
+    private static final long CHECK_MILLIS = 20;
+
+    private static int runs = 0;
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        String[] shapes = (args.length > 0 ? args[0] : "wide,deep,kary,random").split(",");
+        String[] sizes = (args.length > 1 ? args[1] : "100,1000,10000,100000").split(",");
+        int arity = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+        Logger.getLogger("eu.maestro").setLevel(Level.WARNING);
+
+        StatusStore store = StatusStore.acquire(System.getProperty(StatusStore.CONFIGURATION_PROPERTY, Simulation.LOCAL_CONFIGURATION));
+        try {
+            //warms up the code paths, not reported
+            deploy(store, TopologyGenerator.kary(1000, arity));
+            System.out.printf("%-8s %7s %6s %9s %9s %9s %8s %9s %9s %9s %9s %s%n",
+                    "shape", "nodes", "levels", "bound-ms", "start-ms", "extra-ms", "threads", "peak-MB", "held-MB", "reads", "writes", "completed");
+            for (String shape : shapes) {
+                for (String size : sizes) {
+                    DeploymentGraph graph = TopologyGenerator.create(shape, Integer.parseInt(size), arity, seed);
+                    long bound = getLowerBound(graph);
+                    if (bound >= Agent.TIMEOUT_FOR_SERVICE_TO_BECOME_OPERATIONAL) {
+                        System.out.printf("%-8s %7d %6d %9d skipped, beyond the agent timeout%n", shape, graph.size(), graph.getLevelCount(), bound);
+                        continue;
+                    }
+                    Run run = deploy(store, graph);
+                    System.out.printf("%-8s %7d %6d %9d %9d %9d %8d %9.1f %9.1f %9d %9d %s%n",
+                            shape, graph.size(), graph.getLevelCount(), bound, run.millis, run.millis - bound, run.threads,
+                            run.peakheap / 1048576.0, run.heldheap / 1048576.0, run.reads, run.writes, run.completed);
+                }
+            }
+        } finally {
+            store.release();
+        }
+    }//EoM
+
+    /**
+     * @return the earliest time at which every node can have started: all
+     * nodes initialize and download at once, then every level of the longest
+     * dependency chain starts and is checked in turn
+     */
+    public static long getLowerBound(DeploymentGraph graph) {
+        return INITIALIZE_MILLIS + DOWNLOAD_MILLIS + graph.getLevelCount() * (START_MILLIS + CHECK_MILLIS);
+    }//EoM
+
+    private static Run deploy(StatusStore store, DeploymentGraph graph) throws InterruptedException, ExecutionException {
+        Map<Phase, LatencyDistribution> latencies = new EnumMap<>(Phase.class);
+        latencies.put(Phase.INITIALIZE, LatencyDistribution.fixed(INITIALIZE_MILLIS));
+        latencies.put(Phase.DOWNLOAD, LatencyDistribution.fixed(DOWNLOAD_MILLIS));
+        latencies.put(Phase.START, LatencyDistribution.fixed(START_MILLIS));
+        latencies.put(Phase.CHECK, LatencyDistribution.fixed(CHECK_MILLIS));
+        String deploymentid = "scale-" + (++runs);
+
+        System.gc();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+        long heap = getUsedHeap();
+        long reads = store.getReads();
+        long writes = store.getWrites();
+
+        ExecutorService executor = AgentExecutors.create(deploymentid);
+        Orchestrator orchestrator = new Orchestrator(graph, deploymentid, new SystemScheduler(executor), new SimulatedPhases(latencies, new Random(0)));
+        long begin = System.nanoTime();
+        boolean completed = orchestrator.start().get();
+        Run run = new Run();
+        run.millis = (System.nanoTime() - begin) / 1000000;
+        orchestrator.getAgentTermination().get();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        run.completed = completed;
+        run.threads = threads.getPeakThreadCount();
+        run.reads = store.getReads() - reads;
+        run.writes = store.getWrites() - writes;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                run.peakheap += pool.getPeakUsage().getUsed();
+            }
+        }
+        System.gc();
+        run.heldheap = getUsedHeap() - heap;
+        //the statuses of the next topology start from an empty store
+        store.getCache().clear();
+        return run;
+    }//EoM
+
+    private static long getUsedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }//EoM
+
+    private static class Run {
+
+        private long millis;
+        private boolean completed;
+        private int threads;
+        private long peakheap;
+        private long heldheap;
+        private long reads;
+        private long writes;
+
+    }//EoC
+
+}//EoC
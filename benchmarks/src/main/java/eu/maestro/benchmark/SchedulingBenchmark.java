@@ -0,0 +1,84 @@
+package eu.maestro.benchmark;
+
+import eu.maestro.agent.Phase;
+import eu.maestro.simulation.LatencyDistribution;
+import eu.maestro.simulation.Simulation;
+import eu.maestro.store.StatusStore;
+import eu.maestro.util.DeploymentGraph;
+import eu.maestro.util.TopologyGenerator;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole simulated deployment, with agents that watch the status keys of
+ * their dependencies against agents dispatched by the orchestrator. Every
+ * phase takes 1 ms of virtual time, so deep chains finish well within the
+ * agent timeout and the score is the coordination work of the deployment.
+ *
+ * @author Panagiotis Gouvas
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchedulingBenchmark {
+
+    @Param({"1000", "10000"})
+    public int size;
+
+    @Param({TopologyGenerator.WIDE, TopologyGenerator.DEEP})
+    public String shape;
+
+    @Param({"false", "true"})
+    public boolean push;
+
+    private StatusStore store;
+    private DeploymentGraph graph;
+    private Simulation simulation;
+    private Simulation.Result result;
+
+    @Setup
+    public void setup() throws IOException {
+        Logger.getLogger("eu.maestro").setLevel(Level.WARNING);
+        //one local store for all the runs
+        store = StatusStore.acquire(Simulation.LOCAL_CONFIGURATION);
+        graph = TopologyGenerator.create(shape, size, 4, 42);
+        simulation = new Simulation(42).setPushScheduling(push);
+        for (Phase phase : Phase.values()) {
+            simulation.setLatency(phase, LatencyDistribution.fixed(1));
+        }
+    }//EoM
+
+    @TearDown
+    public void teardown() {
+        System.out.println();
+        System.out.println(result);
+        store.release();
+    }//EoM
+
+    @Benchmark
+    public Simulation.Result deploy() throws IOException {
+        result = simulation.run(graph, "scheduling");
+        if (!result.isCompleted()) {
+            throw new IllegalStateException("Deployment did not complete: " + result);
+        }
+        return result;
+    }//EoM
+
+}//EoC
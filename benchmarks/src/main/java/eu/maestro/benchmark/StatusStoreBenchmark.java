@@ -0,0 +1,140 @@
+package eu.maestro.benchmark;
+
+import static eu.maestro.agent.Agent.STATUS_IMAGEDOWNLOADED;
+import static eu.maestro.agent.Agent.STATUS_INITIALIZED;
+import static eu.maestro.agent.Agent.STATUS_SPAWNING;
+import static eu.maestro.agent.Agent.STATUS_STARTED;
+import eu.maestro.store.StatusKey;
+import eu.maestro.store.StatusStore;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Status store access patterns against an embedded local cache: the commit
+ * write-verify cycle of an agent and its asynchronous conditional successor,
+ * the fan-in read of the dependency statuses and the orchestrator sweep.
+ * Every pattern is measured with StatusKey/Integer entries and with the
+ * String keys and values used before them; run with -prof gc to compare
+ * allocation rates.
+ *
+ * @author Panagiotis Gouvas
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dmaestro.infinispan.config=infinispan-local.xml")
+public class StatusStoreBenchmark {
+
+    private static final String DEPLOYMENT = "bench";
+
+    @Param({"100", "10000"})
+    public int nodes;
+
+    @Param({"4", "64"})
+    public int fanin;
+
+    private StatusStore store;
+    private Cache<StatusKey, Integer> cache;
+    private Cache<String, String> legacy;
+    private StatusKey[] keys;
+    private Set<StatusKey> keyset;
+    private String[] names;
+
+    @Setup
+    public void setup() throws IOException {
+        store = StatusStore.acquire();
+        cache = store.getCache();
+        cache.getCacheManager().defineConfiguration("legacy", new ConfigurationBuilder().build());
+        legacy = cache.getCacheManager().getCache("legacy");
+        keys = StatusStore.keys(DEPLOYMENT, nodes);
+        keyset = new HashSet<>(Arrays.asList(keys));
+        names = new String[nodes];
+        for (int i = 0; i < nodes; i++) {
+            names[i] = "node" + i;
+            store.put(keys[i], STATUS_STARTED);
+            legacy.put(DEPLOYMENT + "_" + names[i] + "_status", "" + STATUS_STARTED);
+        }
+    }//EoM
+
+    @TearDown
+    public void teardown() {
+        store.release();
+    }//EoM
+
+    @Benchmark
+    public boolean commitStatus() {
+        StatusKey key = keys[0];
+        store.put(key, STATUS_IMAGEDOWNLOADED);
+        return store.get(key) == STATUS_IMAGEDOWNLOADED;
+    }//EoM
+
+    //one acknowledged conditional transition, as committed by an agent
+    @Benchmark
+    public int advanceStatus() {
+        StatusKey key = keys[0];
+        store.put(key, STATUS_SPAWNING);
+        return store.advance(key, STATUS_INITIALIZED).join();
+    }//EoM
+
+    @Benchmark
+    public boolean commitStatusStringKeys() {
+        String statuslabel = DEPLOYMENT + "_" + names[0] + "_status";
+        legacy.put(statuslabel, "" + STATUS_IMAGEDOWNLOADED);
+        return legacy.get(statuslabel).equalsIgnoreCase("" + STATUS_IMAGEDOWNLOADED);
+    }//EoM
+
+    @Benchmark
+    public boolean depsResolved() {
+        boolean resolved = true;
+        for (int i = 1; i <= fanin && resolved; i++) {
+            resolved = store.get(keys[i]) == STATUS_STARTED;
+        }
+        return resolved;
+    }//EoM
+
+    @Benchmark
+    public boolean depsResolvedStringKeys() {
+        boolean resolved = true;
+        for (int i = 1; i <= fanin && resolved; i++) {
+            String statuslabel = DEPLOYMENT + "_" + names[i] + "_status";
+            resolved = legacy.get(statuslabel).equalsIgnoreCase("" + STATUS_STARTED);
+        }
+        return resolved;
+    }//EoM
+
+    @Benchmark
+    public Map<StatusKey, Integer> orchestratorSweep() {
+        return cache.getAdvancedCache().getAll(keyset);
+    }//EoM
+
+    @Benchmark
+    public Map<String, String> orchestratorSweepStringKeys() {
+        Map<String, String> statusmap = new HashMap<>();
+        for (String nodename : names) {
+            statusmap.put(nodename, legacy.get(DEPLOYMENT + "_" + nodename + "_status"));
+        }
+        return statusmap;
+    }//EoM
+
+}//EoC
@@ -0,0 +1,125 @@
+package eu.maestro.benchmark;
+
+import static eu.maestro.agent.Agent.STATUS_INITIALIZED;
+import static eu.maestro.agent.Agent.STATUS_SPAWNING;
+import eu.maestro.store.StatusKey;
+import eu.maestro.store.StatusStore;
+import eu.maestro.store.StatusWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.infinispan.manager.DefaultCacheManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A burst of status commits, one per node of a deployment, as when a level
+ * of agents finishes a phase together: once committed one key at a time with
+ * StatusStore.advance() and once through the group-commit StatusWriter. The
+ * store is a member of a cluster of embedded cache managers joined over the
+ * in-JVM loopback stack of infinispan-dist.xml; with more than one member
+ * the deployment is owned by the others. The sample time of a burst is the
+ * latency of its last commit; nodes divided by the mean is the commit rate.
+ *
+ * @author Panagiotis Gouvas
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.net.preferIPv4Stack=true", "-Dmaestro.jgroups.stack=loopback", "-Dmaestro.cluster=benchmark"})
+public class StatusWriterBenchmark {
+
+    @Param({"1", "3"})
+    public int members;
+
+    @Param({"100", "1000"})
+    public int nodes;
+
+    private final List<DefaultCacheManager> managers = new ArrayList<>();
+    private StatusStore store;
+    private StatusWriter writer;
+    private StatusKey[] keys;
+    private Map<StatusKey, Integer> spawning;
+
+    @Setup
+    public void setup() throws IOException {
+        store = StatusStore.acquire(StatusStore.DISTRIBUTED_CONFIGURATION);
+        for (int i = 1; i < members; i++) {
+            DefaultCacheManager cachemngr = new DefaultCacheManager(StatusStore.DISTRIBUTED_CONFIGURATION);
+            cachemngr.getCache();
+            managers.add(cachemngr);
+        }
+        writer = new StatusWriter(store);
+        String deploymentid = "bench";
+        for (int i = 0; members > 1 && store.isOwner(deploymentid); i++) {
+            deploymentid = "bench" + i;
+        }
+        keys = StatusStore.keys(deploymentid, nodes);
+        spawning = new HashMap<>();
+        for (StatusKey key : keys) {
+            spawning.put(key, STATUS_SPAWNING);
+        }
+    }//EoM
+
+    //every burst moves the nodes from spawning to initialized
+    @Setup(Level.Invocation)
+    public void reset() {
+        store.putAll(spawning);
+    }//EoM
+
+    @TearDown
+    public void teardown() {
+        System.out.println();
+        System.out.println(writer);
+        for (int i = managers.size() - 1; i >= 0; i--) {
+            managers.get(i).stop();
+        }
+        store.release();
+    }//EoM
+
+    @Benchmark
+    public int advance() {
+        return join(store::advance);
+    }//EoM
+
+    @Benchmark
+    public int batched() {
+        return join(writer::write);
+    }//EoM
+
+    private int join(Committer committer) {
+        List<CompletableFuture<Integer>> commits = new ArrayList<>(keys.length);
+        for (StatusKey key : keys) {
+            commits.add(committer.commit(key, STATUS_INITIALIZED));
+        }
+        int sum = 0;
+        for (CompletableFuture<Integer> commit : commits) {
+            sum += commit.join();
+        }
+        return sum;
+    }//EoM
+
+    private interface Committer {
+
+        CompletableFuture<Integer> commit(StatusKey key, int status);
+
+    }//EoI
+
+}//EoC
@@ -0,0 +1,76 @@
+package eu.maestro.benchmark;
+
+import eu.maestro.store.StatusStore;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.infinispan.manager.DefaultCacheManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Startup time and heap of the status store for a deployment of n nodes: one
+ * cache manager per node, as every Agent used to create, against the shared
+ * reference-counted StatusStore. The heap in use after startup is printed
+ * once per iteration.
+ *
+ * @author Panagiotis Gouvas
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Dmaestro.infinispan.config=infinispan-local.xml")
+public class StoreLifecycleBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int nodes;
+
+    private final List<DefaultCacheManager> managers = new ArrayList<>();
+    private final List<StatusStore> stores = new ArrayList<>();
+
+    @Benchmark
+    public void managerPerNode() throws IOException {
+        for (int i = 0; i < nodes; i++) {
+            DefaultCacheManager cachemngr = new DefaultCacheManager("infinispan-local.xml");
+            cachemngr.getCache();
+            managers.add(cachemngr);
+        }
+    }//EoM
+
+    @Benchmark
+    public void sharedStore() throws IOException {
+        for (int i = 0; i < nodes; i++) {
+            stores.add(StatusStore.acquire());
+        }
+    }//EoM
+
+    @TearDown(Level.Iteration)
+    public void release() {
+        System.gc();
+        long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        System.out.println("heap in use with " + (managers.isEmpty() ? "shared store" : "manager per node") + " for " + nodes + " nodes: " + (heap >> 20) + " MB");
+        for (DefaultCacheManager cachemngr : managers) {
+            cachemngr.stop();
+        }
+        for (StatusStore store : stores) {
+            store.release();
+        }
+        managers.clear();
+        stores.clear();
+    }//EoM
+
+}//EoC
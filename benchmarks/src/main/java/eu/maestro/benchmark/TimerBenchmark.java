@@ -0,0 +1,76 @@
+package eu.maestro.benchmark;
+
+import eu.maestro.time.Cancellable;
+import eu.maestro.time.TimingWheel;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Arming and cancelling an agent deadline while many others are outstanding:
+ * the shared TimingWheel against a ScheduledThreadPoolExecutor that removes
+ * cancelled tasks from its heap, as the timer thread used before.
+ *
+ * @author Panagiotis Gouvas
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class TimerBenchmark {
+
+    private static final Runnable NOTHING = () -> {
+    };
+
+    @Param({"1000", "100000", "500000"})
+    public int outstanding;
+
+    private TimingWheel wheel;
+    private ScheduledThreadPoolExecutor heap;
+
+    @Setup
+    public void setup() {
+        wheel = new TimingWheel("benchmark-wheel", 10, 512);
+        heap = new ScheduledThreadPoolExecutor(1);
+        heap.setRemoveOnCancelPolicy(true);
+        for (int i = 0; i < outstanding; i++) {
+            long delay = TimeUnit.HOURS.toMillis(1) + i;
+            wheel.schedule(NOTHING, delay);
+            heap.schedule(NOTHING, delay, TimeUnit.MILLISECONDS);
+        }
+    }//EoM
+
+    @TearDown
+    public void teardown() {
+        heap.shutdownNow();
+    }//EoM
+
+    @Benchmark
+    public boolean wheelArmAndCancel() {
+        Cancellable deadline = wheel.schedule(NOTHING, 30000);
+        return deadline.cancel();
+    }//EoM
+
+    @Benchmark
+    public boolean heapArmAndCancel() {
+        ScheduledFuture<?> deadline = heap.schedule(NOTHING, 30000, TimeUnit.MILLISECONDS);
+        return deadline.cancel(false);
+    }//EoM
+
+}//EoC
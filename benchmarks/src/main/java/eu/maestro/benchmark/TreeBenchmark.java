@@ -0,0 +1,72 @@
+package eu.maestro.benchmark;
+
+import eu.maestro.util.DeploymentGraph;
+import eu.maestro.util.Node;
+import eu.maestro.util.TopologyGenerator;
+import eu.maestro.util.TreeUtil;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tree search and flattening on large synthetic trees, against the lookup in
+ * a compiled DeploymentGraph.
+ *
+ * @author Panagiotis Gouvas
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({TopologyGenerator.WIDE, TopologyGenerator.DEEP, TopologyGenerator.KARY})
+    public String shape;
+
+    private Node<String> tree;
+    private DeploymentGraph graph;
+    private String last;
+
+    @Setup
+    public void setup() {
+        tree = TopologyGenerator.toTree(TopologyGenerator.create(shape, size, 4, 42));
+        graph = DeploymentGraph.compile(tree);
+        last = "node" + (size - 1);
+    }//EoM
+
+    @Benchmark
+    public Node<String> searchTree() {
+        return TreeUtil.searchTree(tree, last);
+    }//EoM
+
+    @Benchmark
+    public List<String> listifyTree() {
+        return TreeUtil.listifyTree(tree);
+    }//EoM
+
+    @Benchmark
+    public DeploymentGraph compileGraph() {
+        return DeploymentGraph.compile(tree);
+    }//EoM
+
+    @Benchmark
+    public int[] graphDependencies() {
+        return graph.getDependencies(graph.indexOf(last));
+    }//EoM
+
+}//EoC
@@ -1,6 +1,7 @@
 package eu.maestro;
 
-import eu.maestro.orchestrator.Orchestrator;
+import eu.maestro.orchestrator.OrchestrationEngine;
+import eu.maestro.util.DeploymentGraph;
 import eu.maestro.util.Node;
 import eu.maestro.util.TreeUtil;
 import java.io.IOException;
@@ -41,12 +42,15 @@ public class Helper {
         return root;
     }//EoM
 
-    private static void bootOrchestrator(Node<String> tree,String deploymentid){
-        Orchestrator orchestrator = new Orchestrator(tree,deploymentid);
-        Thread thread = new Thread(orchestrator);
-        thread.setName(""+deploymentid);
-        thread.setPriority(Thread.MIN_PRIORITY);
-        thread.start();
-    }//EoC
+    //submits to a shared engine, which stops once the deployment and its agents are done
+    private static void bootOrchestrator(Node<String> tree,String deploymentid) throws IOException{
+        OrchestrationEngine engine = new OrchestrationEngine();
+        //deployments left unfinished by a previous run, if journaling is on
+        engine.recover();
+        if (engine.getDeployment(deploymentid) == null) {
+            engine.submit(DeploymentGraph.compile(tree), deploymentid);
+        }
+        engine.shutdown();
+    }//EoM
 
 }//EoC
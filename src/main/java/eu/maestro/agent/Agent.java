@@ -1,22 +1,30 @@
 package eu.maestro.agent;
 
-import eu.maestro.agent.exception.DownloadImageException;
-import eu.maestro.agent.exception.ImageRuntimeException;
-import eu.maestro.agent.exception.InitializationException;
-import eu.maestro.agent.exception.StartImageException;
 import eu.maestro.agent.exception.StatusCommitException;
 import eu.maestro.agent.exception.TimeOutException;
-import eu.maestro.util.Node;
-import eu.maestro.util.TreeUtil;
+import eu.maestro.metrics.MaestroMetrics;
+import eu.maestro.store.StatusKey;
+import eu.maestro.store.StatusStore;
+import eu.maestro.time.Cancellable;
+import eu.maestro.time.Scheduler;
+import eu.maestro.util.DeploymentGraph;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.infinispan.Cache;
-import org.infinispan.manager.DefaultCacheManager;
 
 /**
+ * Drives one node from its initialization to its started container. The
+ * lifecycle of an agent is CREATED, RUNNING once run, PARKED once its node
+ * has started or failed, and STOPPED once it has released its resources. A
+ * parked agent holds no thread and no timer; it is stopped by its
+ * orchestrator when the deployment ends, or cancelled.
  *
  * @author Panagiotis Gouvas
  */
@@ -24,12 +32,19 @@ public class Agent implements Runnable {
 
     private static final Logger logger = Logger.getLogger(Agent.class.getName());
 
-    private Node<String> tree;
+    public enum Lifecycle {
+        CREATED, RUNNING, PARKED, STOPPED
+    }//EoE
+
+    private DeploymentGraph graph;
     private String deploymentid;
+    private int index;
     private String nodename;
-    DefaultCacheManager cachemngr;
-    Cache<String, String> cache;
-    private int status = 1;
+    private String image;
+    private StatusKey statuskey;
+    StatusStore store;
+    Cache<StatusKey, Integer> cache;
+    private int status;
     //Status
     public static final int STATUS_SPAWNING = 1;
     public static final int STATUS_INITIALIZED = 2;
@@ -56,240 +71,409 @@ public class Agent implements Runnable {
     public static final int EMULATE_MAX_CHECKIMAGE_MILLISECONDS = 1000;                //2 seconds
 
     //current state
-    private boolean terminated = false;
+    private Lifecycle lifecycle = Lifecycle.CREATED;
+    private volatile boolean cancelled = false;
+    //set by stop(), the agent then stops instead of parking
+    private boolean stopping = false;
+    private final Scheduler scheduler;
+    private final AgentPhases phases;
+    private final CompletableFuture<Integer> ready = new CompletableFuture<>();
+    private final CompletableFuture<Integer> termination = new CompletableFuture<>();
+    private StatusKey[] dependencykeys;
+    private volatile DependencyListener dependencylistener;
+    private Cancellable dependencytimer;
+    private long dependencywaitstart;
+    //dependencies are counted by the orchestrator, which dispatches the start
+    private boolean pushscheduled = false;
+    private volatile boolean dispatched = false;
+    private final MaestroMetrics metrics = MaestroMetrics.getInstance();
+
+    /**
+     * @param graph the compiled deployment graph, shared by all agents
+     * @param index the index of the node of this agent in the graph
+     * @param scheduler clock and executor of the agent
+     * @param phases the work done in each phase
+     */
+    public Agent(DeploymentGraph graph, String deploymentid, int index, Scheduler scheduler, AgentPhases phases) {
+        this(graph, deploymentid, index, scheduler, phases, StatusStore.STATUS_UNKNOWN);
+    }//EoCon
 
-    public Agent(Node<String> tree, String deploymentid, String nodename) {
-        this.tree = tree;
+    /**
+     * Agent that resumes a node recovered with the given status, continuing
+     * with the step after it instead of from the initialization.
+     */
+    public Agent(DeploymentGraph graph, String deploymentid, int index, Scheduler scheduler, AgentPhases phases, int resume) {
+        this.graph = graph;
+        this.status = resume > 0 ? resume : STATUS_SPAWNING;
         this.deploymentid = deploymentid;
-        this.nodename = nodename;
+        this.index = index;
+        this.nodename = graph.getName(index);
+        //nodes without a declared image get one of their own
+        this.image = graph.getImage(index) != null ? graph.getImage(index) : nodename;
+        this.statuskey = new StatusKey(deploymentid, index);
+        this.scheduler = scheduler;
+        this.phases = phases;
         try {
-            cachemngr = new DefaultCacheManager("infinispan.xml");
-            cache = cachemngr.getCache();
+            store = StatusStore.acquire();
+            cache = store.getCache();
         } catch (IOException ex) {
             logger.log(Level.SEVERE, null, ex);
         }
-        startTime = System.currentTimeMillis();
     }//EoCon
 
-    private void setStatus(int status) {
-        try {
-            commitStatus(deploymentid, nodename, status);
-        } catch (StatusCommitException ex) {
-            Logger.getLogger(Agent.class.getName()).log(Level.SEVERE, null, ex);
-        }
+    private void setStatus(int status, Runnable next) {
+        commitStatus(statuskey, status, next);
     }//EoM
 
-    private boolean isValueNull(String key) {
-        boolean isnull = false;
-        if (cache.get(key) == null) {
-            isnull = true;
-        }
-        return isnull;
+    /**
+     * Commits the status with an acknowledged asynchronous write, batched
+     * with the commits of the other agents of the JVM by the StatusWriter
+     * of the store, and continues with next, on the scheduler of the agent,
+     * as soon as the store has confirmed it. The write never moves the node
+     * backwards, even when this agent was cancelled or replaced. A write that
+     * is not acknowledged within TIMEOUT_FOR_COMMIT_IN_KEY_VALUE_STORE is
+     * reported and the agent moves on.
+     */
+    private void commitStatus(StatusKey key, int status, Runnable next) {
+        long begin = System.nanoTime();
+        AtomicBoolean done = new AtomicBoolean(false);
+        Cancellable timer = scheduler.schedule(() -> {
+            if (done.compareAndSet(false, true)) {
+                logger.log(Level.SEVERE, "Commit of " + key + " -> " + status + " was not acknowledged", new StatusCommitException());
+                proceed(next);
+            }
+        }, TIMEOUT_FOR_COMMIT_IN_KEY_VALUE_STORE);
+        store.commit(key, status).whenComplete((committed, error) -> {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            timer.cancel();
+            metrics.getCommitHistogram().record((System.nanoTime() - begin) / 1000);
+            if (error != null) {
+                logger.log(Level.SEVERE, "Commit of " + key + " -> " + status + " failed", new StatusCommitException().initCause(error));
+            } else if (committed != status) {
+                logger.warning("Status of " + key + " is already " + committed + ", not moved to " + status);
+            }
+            scheduler.execute(() -> proceed(next));
+        });
     }//EoM
 
-    private void commitStatus(String deploymentid, String nodename, int status) throws StatusCommitException {
-        String statuslabel = deploymentid + "_" + nodename + "_status";
-        boolean timedout = false;
-        do {
-            try {
-                if (timedout) {
-                    throw new StatusCommitException();
-                }
-                cache.put(statuslabel, "" + status);
-                Thread.currentThread().sleep(AGENT_SLEEP_CYCLE_MILLISECONDS);
-            } //while
-            catch (InterruptedException ex) {
-                logger.log(Level.SEVERE, null, ex);
-            }
-        } while (!isValueNull(statuslabel) && !cache.get(statuslabel).equalsIgnoreCase("" + status) && !(timedout = hasTimeoutExceeded(TIMEOUT_FOR_SERVICE_TO_BECOME_OPERATIONAL))); //while
-        //logger.info("SUCCESSFULL commit of "+statuslabel +" -> "+status);
+    //a cancelled agent stops at the next step boundary
+    private void proceed(Runnable next) {
+        if (cancelled) {
+            park();
+        } else {
+            next.run();
+        }
     }//EoM    
 
     //check consul/netdata/jre / docker iterface /  
-    private void step2Initialize() throws InitializationException, TimeOutException {
-        try {
-            Thread.currentThread().sleep(EMULATE_MAX_INITIALIZATION_TIME_MILLISECONDS);
-        } catch (InterruptedException ex) {
-            logger.log(Level.SEVERE, null, ex);
-            throw new InitializationException();
-        }
+    private CompletableFuture<Void> step2Initialize() {
+        return phases.execute(Phase.INITIALIZE, this);
     }//EoM        
 
-    private void step3DownloadImage() throws DownloadImageException, TimeOutException {
-        try {
-            Thread.currentThread().sleep(EMULATE_MAX_DOWNLOADFILE_MILLISECONDS);
-        } catch (InterruptedException ex) {
-            logger.log(Level.SEVERE, null, ex);
-            throw new DownloadImageException();
-        }
+    private CompletableFuture<Void> step3DownloadImage() {
+        return phases.execute(Phase.DOWNLOAD, this);
     }//EoM    
 
-    private void step5StartImage() throws StartImageException, TimeOutException {
-        try {
-            Thread.currentThread().sleep(EMULATE_MAX_STARTIMAGE_MILLISECONDS);
-        } catch (InterruptedException ex) {
-            logger.log(Level.SEVERE, null, ex);
-            throw new StartImageException();
-        }
+    private CompletableFuture<Void> step5StartImage() {
+        return phases.execute(Phase.START, this);
     }//EoM       
 
-    private void step6CheckRunningImage() throws ImageRuntimeException, TimeOutException {
-        try {
-            Thread.currentThread().sleep(EMULATE_MAX_CHECKIMAGE_MILLISECONDS);
-        } catch (InterruptedException ex) {
-            logger.log(Level.SEVERE, null, ex);
-            throw new ImageRuntimeException();
-        }
+    private CompletableFuture<Void> step6CheckRunningImage() {
+        return phases.execute(Phase.CHECK, this);
     }//EoM      
 
+    /**
+     * Starts the agent. Every step continues the next one once its status has
+     * been committed, so the agent holds no thread while it waits.
+     */
     @Override
     public void run() {
         //------------Step 1 has already been accomplished. VM is booted and Agent Started
+        synchronized (this) {
+            if (lifecycle != Lifecycle.CREATED) {
+                return;
+            }
+            lifecycle = Lifecycle.RUNNING;
+        }
+        startTime = scheduler.currentTimeMillis();
+        if (cancelled) {
+            terminate();
+            return;
+        }
         logger.info("Starting Agent for " + deploymentid + "_" + nodename);
+        switch (status) {
+            case STATUS_INITIALIZED:
+                downloadImage();
+                return;
+            case STATUS_IMAGEDOWNLOADED:
+            case STATUS_WAITING_FOR_DEPENDENCIES:
+                manageDependencies();
+                return;
+            case STATUS_TRIGGERED_CONTAINER_START:
+                checkRunningImage();
+                return;
+            default:
+                break;
+        }
 
         //------------Step 2: Initialize Image
-        try {
-            //VM has been spawned. We will proceed with the initialization
-            step2Initialize();
-            setStatus(status = STATUS_INITIALIZED);
-        } catch (InitializationException ex) {
-            logger.log(Level.SEVERE, null, ex);
-        } catch (TimeOutException ex) {
-            logger.log(Level.SEVERE, null, ex);
-            setStatus(status = STATUS_TERMINATED_DUE_TO_TIMEOUT);
-        }
+        //VM has been spawned. We will proceed with the initialization
+        onStep(Phase.INITIALIZE, this::step2Initialize, STATUS_INITIALIZED, STATUS_TERMINATED_DUE_TO_UNSUCCESSFUL_INITIALIZATION, this::downloadImage);
+    }//EoM
 
-        //------------Step 3: Download Image
-        if (status > 0) {
-            try {
-                step3DownloadImage();
-                setStatus(status = STATUS_IMAGEDOWNLOADED);
-            } catch (DownloadImageException ex) {
-                logger.log(Level.SEVERE, null, ex);
-                setStatus(status = STATUS_TERMINATED_DUE_TO_UNSUCCESSFUL_DOWNLOAD);
-            } catch (TimeOutException ex) {
-                logger.log(Level.SEVERE, null, ex);
-                setStatus(status = STATUS_TERMINATED_DUE_TO_TIMEOUT);
-            }
+    //------------Step 3: Download Image
+    private void downloadImage() {
+        onStep(Phase.DOWNLOAD, this::step3DownloadImage, STATUS_IMAGEDOWNLOADED, STATUS_TERMINATED_DUE_TO_UNSUCCESSFUL_DOWNLOAD, this::manageDependencies);
+    }//EoM
+
+    //-----------Step 4: Manage dependencies if no fatal exception has been thrown
+    private void manageDependencies() {
+        int[] deps = graph.getDependencies(index);
+        if (deps.length > 0) {
+            setStatus(status = STATUS_WAITING_FOR_DEPENDENCIES, () -> awaitDependencies(deps));
+        } else {
+            //No dependencies
+            startImage();
         }
+    }//EoM
+
+    //-------------Step 5: Start Image
+    private void startImage() {
+        onStep(Phase.START, this::step5StartImage, STATUS_TRIGGERED_CONTAINER_START, STATUS_TERMINATED_DUE_TO_UNSUCCESSFUL_CONTAINER_TRIGGERING, this::checkRunningImage);
+    }//EoM
 
-        //-----------Step 4: Manage dependencies if no fatal exception has been thrown
-        if (status > 0) {
-            List<Node<String>> deps = getDependencies();
-            if (deps.size() > 0) {
-                setStatus(status = STATUS_WAITING_FOR_DEPENDENCIES);
-                boolean depsresolved = false;
-                boolean timedout = false;
-                while (!(depsresolved = depsResolved(deps)) && !(timedout = hasTimeoutExceeded(TIMEOUT_FOR_SERVICE_TO_BECOME_OPERATIONAL))) {
-                    try {
-                        if (!terminated) {
-//                        commitStatus(deploymentid, nodename, status);
-                            Thread.currentThread().sleep(AGENT_SLEEP_CYCLE_MILLISECONDS);
-                        }
-                    } catch (InterruptedException ex) {
-                        logger.log(Level.SEVERE, null, ex);
-                    }
-                }//while
-            } //else No dependencies            
-        }//manage dependencies    
-
-        //-------------Step 5: Start Image
-        if (status > 0) {
-            try {
-                step5StartImage();
-                setStatus(status = STATUS_TRIGGERED_CONTAINER_START);
-            } catch (StartImageException ex) {
-                logger.log(Level.SEVERE, null, ex);
-                setStatus(status = STATUS_TERMINATED_DUE_TO_UNSUCCESSFUL_CONTAINER_TRIGGERING);
-            } catch (TimeOutException ex) {
-                logger.log(Level.SEVERE, null, ex);
-                setStatus(status = STATUS_TERMINATED_DUE_TO_TIMEOUT);
+    //-------------Step 6: Verify Image Started
+    private void checkRunningImage() {
+        onStep(Phase.CHECK, this::step6CheckRunningImage, STATUS_STARTED, STATUS_TERMINATED_DUE_TO_BAD_LAUNCH, this::park);
+    }//EoM
+
+    /**
+     * Runs the step under its phase deadline and records its duration, then
+     * commits the success status and continues with next, or commits the
+     * failure status and stops. A step still running at its deadline is
+     * abandoned with STATUS_TERMINATED_DUE_TO_TIMEOUT.
+     */
+    private void onStep(Phase phase, Supplier<CompletableFuture<Void>> step, int success, int failure, Runnable next) {
+        long begin = scheduler.currentTimeMillis();
+        AtomicBoolean done = new AtomicBoolean(false);
+        long remaining = TIMEOUT_FOR_SERVICE_TO_BECOME_OPERATIONAL - (begin - startTime);
+        Cancellable deadline = scheduler.schedule(() -> {
+            if (done.compareAndSet(false, true)) {
+                metrics.getPhase(phase).record((scheduler.currentTimeMillis() - begin) * 1000);
+                logger.log(Level.SEVERE, phase + " of " + deploymentid + "_" + nodename + " exceeded its deadline", new TimeOutException());
+                setStatus(status = STATUS_TERMINATED_DUE_TO_TIMEOUT, this::park);
             }
-        }
+        }, Math.min(phase.getTimeoutMillis(), remaining));
+        step.get().whenComplete((ignored, error) -> {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            deadline.cancel();
+            metrics.getPhase(phase).record((scheduler.currentTimeMillis() - begin) * 1000);
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause == null) {
+                setStatus(status = success, next);
+            } else if (cause instanceof TimeOutException) {
+                logger.log(Level.SEVERE, null, cause);
+                setStatus(status = STATUS_TERMINATED_DUE_TO_TIMEOUT, this::park);
+            } else {
+                logger.log(Level.SEVERE, null, cause);
+                setStatus(status = failure, this::park);
+            }
+        });
+    }//EoM
 
-        //-------------Step 6: Verify Image Started
-        if (status > 0) {
-            try {
-                step6CheckRunningImage();
-                setStatus(status = STATUS_STARTED);
-            } catch (ImageRuntimeException ex) {
-                logger.log(Level.SEVERE, null, ex);
-                setStatus(status = STATUS_TERMINATED_DUE_TO_BAD_LAUNCH);
-            } catch (TimeOutException ex) {
-                logger.log(Level.SEVERE, null, ex);
-                setStatus(status = STATUS_TERMINATED_DUE_TO_TIMEOUT);
+    /**
+     * Watches the dependency status keys before the initial
+     * read, so no transition can be missed in between, and a timer for the
+     * remainder of the agent timeout. Whichever fires first continues. A
+     * push-scheduled agent watches nothing and waits for dispatch() instead.
+     */
+    private void awaitDependencies(int[] deps) {
+        dependencywaitstart = scheduler.currentTimeMillis();
+        dependencykeys = new StatusKey[deps.length];
+        for (int i = 0; i < deps.length; i++) {
+            dependencykeys[i] = new StatusKey(deploymentid, deps[i]);
+        }
+        DependencyListener listener = new DependencyListener(Arrays.asList(dependencykeys), () -> scheduler.execute(() -> dependenciesResolved(true)));
+        dependencytimer = scheduler.schedule(() -> {
+            if (listener.cancel()) {
+                dependenciesResolved(false);
+            }
+        }, TIMEOUT_FOR_SERVICE_TO_BECOME_OPERATIONAL - (scheduler.currentTimeMillis() - startTime));
+        //published once the timer is set, a dispatch may resolve it at once
+        dependencylistener = listener;
+        if (pushscheduled) {
+            if (dispatched) {
+                dependencylistener.release();
+            }
+        } else {
+            for (StatusKey key : dependencykeys) {
+                store.watch(key, dependencylistener);
             }
+            for (Map.Entry<StatusKey, Integer> entry : store.getAll(dependencykeys).entrySet()) {
+                dependencylistener.resolve(entry.getKey(), entry.getValue());
+            }
+        }
+        if (cancelled && dependencylistener.cancel()) {
+            dependenciesResolved(false);
         }
+    }//EoM
 
-        while (!terminated && !hasTimeoutExceeded(TIMEOUT_FOR_SERVICE_TO_BECOME_OPERATIONAL)) {
-            //update status and enter sleep mode
-            try {
-                if (!terminated) {
-                    Thread.currentThread().sleep(AGENT_SLEEP_CYCLE_MILLISECONDS);
-                }
-            } catch (InterruptedException ex) {
-                logger.log(Level.SEVERE, null, ex);
-            }
-        }//terminated
+    private void dependenciesResolved(boolean resolved) {
+        for (int i = 0; !pushscheduled && i < dependencykeys.length; i++) {
+            store.unwatch(dependencykeys[i], dependencylistener);
+        }
+        dependencytimer.cancel();
+        metrics.getDependencyWaitHistogram().record((scheduler.currentTimeMillis() - dependencywaitstart) * 1000);
+        if (cancelled) {
+            park();
+        } else if (resolved) {
+            startImage();
+        } else {
+            logger.severe("Dependencies of " + deploymentid + "_" + nodename + " were not resolved in time");
+            setStatus(status = STATUS_TERMINATED_DUE_TO_TIMEOUT, this::park);
+        }
+    }//EoM
 
-        logger.info("Terminating Agent for " + deploymentid + "_" + nodename);
-        cachemngr.stop();
+    /**
+     * Has the agent wait for dispatch() from its orchestrator once its image
+     * is downloaded, instead of watching the status keys of its
+     * dependencies. Must be called before run().
+     */
+    public void setPushScheduled(boolean pushscheduled) {
+        this.pushscheduled = pushscheduled;
     }//EoM
 
-    private boolean depsResolved(List<Node<String>> deps) {
-        boolean depsresolved = false;
-        for (Node<String> dep : deps) {
-            String statuslabel = deploymentid + "_" + dep.getData() + "_status";
-            depsresolved = cache.get(statuslabel).equalsIgnoreCase("" + STATUS_STARTED);
-            if (depsresolved == false) {
-                break;
-            }
+    /**
+     * Starts the container of a push-scheduled agent, all of whose
+     * dependencies have started. A dispatch that arrives while the agent is
+     * still downloading is kept until it gets to its dependencies.
+     */
+    public void dispatch() {
+        dispatched = true;
+        DependencyListener listener = dependencylistener;
+        if (listener != null) {
+            listener.release();
         }
-        return depsresolved;
     }//EoM
 
-    private List<Node<String>> getDependencies() {
-        logger.info("tree: " + tree);
-        logger.info("checking tree for |" + nodename + "|");
-        Node<String> node = TreeUtil.searchTree(tree, nodename);
-        logger.info("node found: " + node.toString());
-        return node.getChildren();
+    //the node has started or failed: holds nothing until stopped
+    private void park() {
+        boolean release;
+        synchronized (this) {
+            if (lifecycle != Lifecycle.RUNNING) {
+                return;
+            }
+            lifecycle = Lifecycle.PARKED;
+            release = cancelled || stopping;
+        }
+        ready.complete(status);
+        if (release) {
+            terminate();
+        }
     }//EoM
 
-    private boolean hasTimeoutExceeded(long timeout) {
-        boolean exceeded = false;
-        long duration = System.currentTimeMillis() - startTime;
-        if (duration > timeout) {
-            exceeded = true;
+    /**
+     * Releases the agent once its node has started or failed: at once if it
+     * is parked or has not been run, otherwise as soon as it parks. Called
+     * by the orchestrator when the deployment has ended.
+     */
+    public void stop() {
+        boolean release;
+        synchronized (this) {
+            stopping = true;
+            release = lifecycle == Lifecycle.PARKED || lifecycle == Lifecycle.CREATED;
         }
-        return exceeded;
-    }//EoM  
-
-    private boolean hasTimeoutExceeded(long startTime, long timeout) {
-        boolean exceeded = false;
-        long duration = System.currentTimeMillis() - startTime;
-        if (duration > timeout) {
-            exceeded = true;
+        if (release) {
+            terminate();
         }
-        return exceeded;
-    }//EoM        
+    }//EoM
 
-    private boolean startImage() {
-        try {
-            Thread.currentThread().sleep(EMULATE_MAX_STARTIMAGE_MILLISECONDS);
-        } catch (InterruptedException ex) {
-            logger.log(Level.SEVERE, null, ex);
+    /**
+     * Stops the agent at the next step boundary, or at once if it is waiting
+     * for its dependencies or parked. The status already committed is kept.
+     */
+    public void cancel() {
+        synchronized (this) {
+            if (lifecycle == Lifecycle.STOPPED) {
+                return;
+            }
+            cancelled = true;
+            if (lifecycle != Lifecycle.RUNNING) {
+                //parked, or never run: nothing to interrupt
+                scheduler.execute(this::terminate);
+                return;
+            }
         }
-        return true;
-    }//EoM    
+        scheduler.execute(() -> {
+            DependencyListener listener = dependencylistener;
+            if (listener != null && listener.cancel()) {
+                dependenciesResolved(false);
+            }
+        });
+    }//EoM
 
-    private boolean checkImageStarted() {
-        try {
-            Thread.currentThread().sleep(EMULATE_MAX_CHECKIMAGE_MILLISECONDS);
-        } catch (InterruptedException ex) {
-            logger.log(Level.SEVERE, null, ex);
+    private void terminate() {
+        synchronized (this) {
+            if (lifecycle == Lifecycle.STOPPED) {
+                return;
+            }
+            lifecycle = Lifecycle.STOPPED;
         }
-        return true;
-    }//EoM        
+        logger.info("Terminating Agent for " + deploymentid + "_" + nodename);
+        store.release();
+        ready.complete(status);
+        termination.complete(status);
+    }//EoM
+
+    public synchronized Lifecycle getLifecycle() {
+        return lifecycle;
+    }//EoM
+
+    /**
+     * @return completes with the final status once the node has started or
+     * failed and the agent has parked, or once it was stopped before
+     */
+    public CompletableFuture<Integer> getReady() {
+        return ready;
+    }//EoM
+
+    /**
+     * @return completes with the final status once the agent has terminated
+     */
+    public CompletableFuture<Integer> getTermination() {
+        return termination;
+    }//EoM
+
+    public DeploymentGraph getGraph() {
+        return graph;
+    }//EoM
+
+    public Scheduler getScheduler() {
+        return scheduler;
+    }//EoM
+
+    public String getDeploymentid() {
+        return deploymentid;
+    }//EoM
+
+    public int getIndex() {
+        return index;
+    }//EoM
+
+    public String getNodename() {
+        return nodename;
+    }//EoM
+
+    public String getImage() {
+        return image;
+    }//EoM
+
+    public int getStatus() {
+        return status;
+    }//EoM
 
 }//EoC
@@ -0,0 +1,18 @@
+package eu.maestro.agent;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Performs the work of each phase for an agent. A phase never blocks the
+ * calling thread; it completes the returned future when done, or completes it
+ * exceptionally with the exception of the phase (InitializationException,
+ * DownloadImageException, StartImageException, ImageRuntimeException or
+ * TimeOutException).
+ *
+ * @author Panagiotis Gouvas
+ */
+public interface AgentPhases {
+
+    CompletableFuture<Void> execute(Phase phase, Agent agent);
+
+}//EoI
@@ -0,0 +1,69 @@
+package eu.maestro.agent;
+
+import static eu.maestro.agent.Agent.STATUS_STARTED;
+import eu.maestro.store.StatusKey;
+import eu.maestro.store.StatusWatcher;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Wakes an agent as soon as the last of its dependencies reports
+ * STATUS_STARTED, instead of polling the status keys of its children.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class DependencyListener implements StatusWatcher {
+
+    private final Set<StatusKey> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean fired = new AtomicBoolean(false);
+    private final Runnable onResolved;
+
+    /**
+     * @param onResolved runs once, on the thread that observes the last
+     * dependency start, unless the listener is cancelled first
+     */
+    public DependencyListener(Collection<StatusKey> keys, Runnable onResolved) {
+        this.onResolved = onResolved;
+        pending.addAll(keys);
+    }//EoCon
+
+    @Override
+    public void onStatus(StatusKey key, int status) {
+        resolve(key, status);
+    }//EoM
+
+    /**
+     * Marks the dependency behind the key as resolved if the status is
+     * STATUS_STARTED. Used both by cache events and by the initial sweep.
+     */
+    public void resolve(StatusKey key, Integer status) {
+        if (status != null && status == STATUS_STARTED && pending.remove(key) && pending.isEmpty() && fired.compareAndSet(false, true)) {
+            onResolved.run();
+        }
+    }//EoM
+
+    /**
+     * Resolves all dependencies at once, when their start has been observed
+     * by someone else, such as the StartDispatcher of the orchestrator.
+     */
+    public void release() {
+        if (fired.compareAndSet(false, true)) {
+            pending.clear();
+            onResolved.run();
+        }
+    }//EoM
+
+    /**
+     * @return false if the dependencies have already been resolved
+     */
+    public boolean cancel() {
+        return fired.compareAndSet(false, true);
+    }//EoM
+
+    public Set<StatusKey> getPending() {
+        return pending;
+    }//EoM
+
+}//EoC
@@ -0,0 +1,256 @@
+package eu.maestro.agent;
+
+import eu.maestro.agent.exception.DownloadImageException;
+import eu.maestro.time.Scheduler;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ToLongFunction;
+
+/**
+ * Orders the image downloads of all agents that share it, instead of letting
+ * every agent start its download at the same moment. A download is ranked by
+ * the depth of its node: the deeper the node, the more dependents still have
+ * to start one after the other once it has started, so the sooner its image
+ * is needed. Among nodes of the same depth, lower levels go first.
+ *
+ * At most maestro.download.concurrency downloads run at once, and with
+ * maestro.download.bandwidth (bytes per second) set, downloads are admitted no
+ * faster than the budget allows for their estimated size. With
+ * maestro.download.prefetch the download is queued as soon as the agent
+ * starts its initialization, so it can run ahead of the DOWNLOAD phase, which
+ * then only waits for it; it is dropped from the queue if the agent parks or
+ * stops first. The other phases go straight to the wrapped phases.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class DownloadScheduler implements AgentPhases {
+
+    public static final String CONCURRENCY_PROPERTY = "maestro.download.concurrency";
+    public static final String BANDWIDTH_PROPERTY = "maestro.download.bandwidth";
+    public static final String IMAGE_BYTES_PROPERTY = "maestro.download.image.bytes";
+    public static final String PREFETCH_PROPERTY = "maestro.download.prefetch";
+    public static final int DEFAULT_CONCURRENCY = 16;
+    public static final long DEFAULT_IMAGE_BYTES = 128L * 1024 * 1024;
+
+    private static DownloadScheduler shared;
+
+    private final AgentPhases phases;
+    private final int concurrency;
+    private final long bandwidth;
+    private final boolean prefetch;
+    private final ToLongFunction<Agent> sizes;
+
+    private final PriorityQueue<Download> queue = new PriorityQueue<>();
+    private final Map<Agent, Download> downloads = new IdentityHashMap<>();
+    private long sequence = 0;
+    private int active = 0;
+    //bytes the budget allows to admit; negative while paying off a large image
+    private double tokens = 0;
+    private long refilled = -1;
+    private boolean refilling = false;
+
+    /**
+     * Scheduler configured from the maestro.download.* system properties.
+     */
+    public DownloadScheduler(AgentPhases phases) {
+        this(phases, Integer.getInteger(CONCURRENCY_PROPERTY, DEFAULT_CONCURRENCY), Long.getLong(BANDWIDTH_PROPERTY, 0),
+                Boolean.parseBoolean(System.getProperty(PREFETCH_PROPERTY, "true")), agent -> Long.getLong(IMAGE_BYTES_PROPERTY, DEFAULT_IMAGE_BYTES));
+    }//EoCon
+
+    /**
+     * @param phases the phases that do the work, downloads included
+     * @param concurrency downloads running at once
+     * @param bandwidth bytes per second admitted, 0 for no budget
+     * @param prefetch queue the download when the initialization starts
+     * @param sizes estimated bytes of the image of an agent
+     */
+    public DownloadScheduler(AgentPhases phases, int concurrency, long bandwidth, boolean prefetch, ToLongFunction<Agent> sizes) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Download concurrency must be positive, not " + concurrency);
+        }
+        this.phases = phases;
+        this.concurrency = concurrency;
+        this.bandwidth = bandwidth;
+        this.prefetch = prefetch;
+        this.sizes = sizes;
+    }//EoCon
+
+    /**
+     * @return the scheduler of the emulated phases, shared by the
+     * orchestrators of this JVM so that they share its budget
+     */
+    public static synchronized DownloadScheduler getShared() {
+        if (shared == null) {
+            shared = new DownloadScheduler(new EmulatedPhases());
+        }
+        return shared;
+    }//EoM
+
+    @Override
+    public CompletableFuture<Void> execute(Phase phase, Agent agent) {
+        switch (phase) {
+            case INITIALIZE:
+                if (prefetch) {
+                    request(agent, false);
+                }
+                return phases.execute(phase, agent);
+            case DOWNLOAD:
+                return request(agent, true);
+            default:
+                return phases.execute(phase, agent);
+        }
+    }//EoM
+
+    private CompletableFuture<Void> request(Agent agent, boolean needed) {
+        Download download;
+        boolean created = false;
+        synchronized (this) {
+            download = downloads.get(agent);
+            if (download == null) {
+                download = new Download(agent, sequence++);
+                downloads.put(agent, download);
+                queue.add(download);
+                created = true;
+            }
+            if (needed) {
+                //the agent takes over the download, finished or not
+                download.needed = true;
+                if (download.future.isDone()) {
+                    downloads.remove(agent);
+                }
+            }
+        }
+        if (created) {
+            //a prefetch the agent never comes back for: it failed its
+            //initialization or was cancelled, and parked or stopped
+            agent.getReady().whenComplete((status, error) -> forget(agent));
+        }
+        dispatch(agent.getScheduler());
+        return download.future;
+    }//EoM
+
+    //a queued download is dropped; one already running is shared through the
+    //image cache and finishes
+    private synchronized void forget(Agent agent) {
+        Download download = downloads.remove(agent);
+        if (download != null && queue.remove(download)) {
+            download.future.completeExceptionally(new DownloadImageException());
+        }
+    }//EoM
+
+    //starts the best ranked downloads the budget allows
+    private void dispatch(Scheduler clock) {
+        while (true) {
+            Download next;
+            synchronized (this) {
+                if (active >= concurrency || queue.isEmpty() || !hasBudget(clock)) {
+                    return;
+                }
+                next = queue.poll();
+                active++;
+                if (bandwidth > 0) {
+                    tokens -= sizes.applyAsLong(next.agent);
+                }
+            }
+            start(next);
+        }
+    }//EoM
+
+    //refills the budget, or arranges a dispatch once it is paid off
+    private boolean hasBudget(Scheduler clock) {
+        if (bandwidth <= 0) {
+            return true;
+        }
+        long now = clock.currentTimeMillis();
+        if (refilled >= 0) {
+            //at most one second of unused budget is kept
+            tokens = Math.min(bandwidth, tokens + (now - refilled) * bandwidth / 1000.0);
+        }
+        refilled = now;
+        if (tokens >= 0) {
+            return true;
+        }
+        if (!refilling) {
+            refilling = true;
+            clock.schedule(() -> {
+                synchronized (this) {
+                    refilling = false;
+                }
+                dispatch(clock);
+            }, (long) Math.ceil(-tokens * 1000 / bandwidth));
+        }
+        return false;
+    }//EoM
+
+    private void start(Download download) {
+        Agent agent = download.agent;
+        CompletableFuture<Void> done;
+        if (agent.getReady().isDone()) {
+            //parked or stopped while queued
+            done = new CompletableFuture<>();
+            done.completeExceptionally(new DownloadImageException());
+        } else {
+            done = phases.execute(Phase.DOWNLOAD, agent);
+        }
+        done.whenComplete((ignored, error) -> {
+            synchronized (this) {
+                active--;
+                if (download.needed) {
+                    downloads.remove(agent);
+                }
+            }
+            if (error != null) {
+                download.future.completeExceptionally(error);
+            } else {
+                download.future.complete(null);
+            }
+            dispatch(agent.getScheduler());
+        });
+    }//EoM
+
+    public synchronized int getQueued() {
+        return queue.size();
+    }//EoM
+
+    public synchronized int getActive() {
+        return active;
+    }//EoM
+
+    @Override
+    public synchronized String toString() {
+        return "DownloadScheduler{" + "concurrency=" + concurrency + ", bandwidth=" + bandwidth + ", prefetch=" + prefetch + ", active=" + active + ", queued=" + queue.size() + '}';
+    }//EoM
+
+    private static final class Download implements Comparable<Download> {
+
+        private final Agent agent;
+        private final int depth;
+        private final int level;
+        private final long sequence;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        //set once the agent has reached its DOWNLOAD phase
+        private boolean needed;
+
+        private Download(Agent agent, long sequence) {
+            this.agent = agent;
+            this.depth = agent.getGraph().getDepth(agent.getIndex());
+            this.level = agent.getGraph().getLevel(agent.getIndex());
+            this.sequence = sequence;
+        }//EoCon
+
+        @Override
+        public int compareTo(Download other) {
+            if (depth != other.depth) {
+                return Integer.compare(other.depth, depth);
+            }
+            if (level != other.level) {
+                return Integer.compare(level, other.level);
+            }
+            return Long.compare(sequence, other.sequence);
+        }//EoM
+
+    }//EoC
+
+}//EoC
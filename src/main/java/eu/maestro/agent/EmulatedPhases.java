@@ -0,0 +1,91 @@
+package eu.maestro.agent;
+
+import static eu.maestro.agent.Agent.EMULATE_MAX_CHECKIMAGE_MILLISECONDS;
+import static eu.maestro.agent.Agent.EMULATE_MAX_INITIALIZATION_TIME_MILLISECONDS;
+import static eu.maestro.agent.Agent.EMULATE_MAX_STARTIMAGE_MILLISECONDS;
+import eu.maestro.agent.exception.DownloadImageException;
+import eu.maestro.agent.exception.ImageRuntimeException;
+import eu.maestro.image.ImageCache;
+import eu.maestro.probe.ProbeEngine;
+import eu.maestro.probe.ProbeTarget;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Default phases: initialization and container start are emulated with the
+ * EMULATE_MAX_* delays, and the image is pulled through the shared ImageCache
+ * on its I/O threads. A node with a readiness probe is checked by the
+ * shared ProbeEngine; the check of a node without one is emulated.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class EmulatedPhases implements AgentPhases {
+
+    private static final Logger logger = Logger.getLogger(EmulatedPhases.class.getName());
+
+    @Override
+    public CompletableFuture<Void> execute(Phase phase, Agent agent) {
+        switch (phase) {
+            case INITIALIZE:
+                return delay(agent, EMULATE_MAX_INITIALIZATION_TIME_MILLISECONDS);
+            case DOWNLOAD:
+                return download(agent);
+            case START:
+                return delay(agent, EMULATE_MAX_STARTIMAGE_MILLISECONDS);
+            case CHECK:
+                return check(agent);
+            default:
+                throw new IllegalArgumentException("Unknown phase " + phase);
+        }
+    }//EoM
+
+    private CompletableFuture<Void> delay(Agent agent, long millis) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        agent.getScheduler().schedule(() -> done.complete(null), millis);
+        return done;
+    }//EoM
+
+    private CompletableFuture<Void> check(Agent agent) {
+        String probe = agent.getGraph().getProbe(agent.getIndex());
+        if (probe == null) {
+            return delay(agent, EMULATE_MAX_CHECKIMAGE_MILLISECONDS);
+        }
+        try {
+            return ProbeEngine.getShared().probe(ProbeTarget.parse(probe), Phase.CHECK.getTimeoutMillis(), agent.getScheduler());
+        } catch (IOException | IllegalArgumentException ex) {
+            logger.log(Level.SEVERE, null, ex);
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new ImageRuntimeException());
+            return failed;
+        }
+    }//EoM
+
+    private CompletableFuture<Void> download(Agent agent) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        ImageCache cache;
+        try {
+            cache = ImageCache.getShared();
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, null, ex);
+            done.completeExceptionally(new DownloadImageException());
+            return done;
+        }
+        //completes on an I/O thread of the cache; the agent holds no thread meanwhile
+        cache.pull(agent.getImage()).whenComplete((layers, error) -> {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause == null) {
+                //the container of the agent runs from the layers until it terminates
+                agent.getTermination().whenComplete((status, terminated) -> cache.release(layers));
+                done.complete(null);
+            } else {
+                logger.log(Level.SEVERE, null, cause);
+                done.completeExceptionally(cause instanceof DownloadImageException ? cause : new DownloadImageException());
+            }
+        });
+        return done;
+    }//EoM
+
+}//EoC
@@ -0,0 +1,29 @@
+package eu.maestro.agent;
+
+/**
+ * The timed phases of an agent, steps 2, 3, 5 and 6 of Agent.run(). Each has
+ * its own deadline, configurable with maestro.phase.timeout.&lt;phase&gt; in
+ * milliseconds, and never later than the overall agent timeout.
+ *
+ * @author Panagiotis Gouvas
+ */
+public enum Phase {
+
+    INITIALIZE(10000),
+    DOWNLOAD(30000),
+    START(10000),
+    CHECK(10000);
+
+    public static final String TIMEOUT_PROPERTY_PREFIX = "maestro.phase.timeout.";
+
+    private final long timeoutMillis;
+
+    private Phase(long defaultTimeoutMillis) {
+        this.timeoutMillis = Long.getLong(TIMEOUT_PROPERTY_PREFIX + name().toLowerCase(), defaultTimeoutMillis);
+    }//EoCon
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }//EoM
+
+}//EoE
@@ -5,5 +5,12 @@ package eu.maestro.agent.exception;
  * @author Panagiotis Gouvas (pgouvas@ubitech.eu)
  */
 public class DownloadImageException extends Exception{
+
+    public DownloadImageException() {
+    }//EoCon
+
+    public DownloadImageException(String message) {
+        super(message);
+    }//EoCon
     
 }
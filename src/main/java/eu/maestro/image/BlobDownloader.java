@@ -0,0 +1,746 @@
+package eu.maestro.image;
+
+import eu.maestro.agent.exception.DownloadImageException;
+import eu.maestro.time.Cancellable;
+import eu.maestro.time.SystemScheduler;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Downloads blobs over HTTP/1.1 with up to maestro.image.download.connections
+ * range requests in parallel, each for a part of at least
+ * maestro.image.download.part.bytes. Every connection reads into its own
+ * direct buffer, which is written straight to its position in the target
+ * file, so the content is never copied into the heap on its way to disk.
+ *
+ * The digest is computed while the blob streams in: the bytes at the front
+ * of the blob are digested from the buffer they arrived in, and bytes that
+ * arrived ahead of the front are read back from the file once the front
+ * reaches them. A mismatch deletes the download and raises
+ * DownloadImageException.
+ *
+ * The progress of every part is checkpointed next to the target in
+ * &lt;target&gt;.progress, so a download that failed or whose process died
+ * resumes where its parts stopped, provided the server supports ranges.
+ * Bytes claimed by a checkpoint but lost in a crash are caught by the digest.
+ *
+ * Only plain http is spoken; TLS is expected to be terminated in front of
+ * the registry.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class BlobDownloader {
+
+    private static final Logger logger = Logger.getLogger(BlobDownloader.class.getName());
+
+    public static final String CONNECTIONS_PROPERTY = "maestro.image.download.connections";
+    public static final String PART_BYTES_PROPERTY = "maestro.image.download.part.bytes";
+    public static final String READ_TIMEOUT_PROPERTY = "maestro.image.download.timeout.millis";
+    public static final int DEFAULT_CONNECTIONS = 4;
+    public static final long DEFAULT_PART_BYTES = 16L * 1024 * 1024;
+    public static final long DEFAULT_READ_TIMEOUT_MILLIS = 30000;
+    public static final String PROGRESS_SUFFIX = ".progress";
+
+    private static final int BUFFER_BYTES = 256 * 1024;
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+    private static final long CHECKPOINT_BYTES = 8L * 1024 * 1024;
+    private static final int PROGRESS_MAGIC = 0x4d425031;
+
+    private static final AtomicInteger threads = new AtomicInteger();
+    private static final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "maestro-download-" + threads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int parallelism;
+    private final long partbytes;
+    private final long timeoutmillis;
+    private final AtomicLong downloaded = new AtomicLong();
+    private final AtomicLong resumed = new AtomicLong();
+    private final AtomicLong reread = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+
+    /**
+     * Downloader configured from the maestro.image.download.* system
+     * properties.
+     */
+    public BlobDownloader() {
+        this(Integer.getInteger(CONNECTIONS_PROPERTY, DEFAULT_CONNECTIONS), Long.getLong(PART_BYTES_PROPERTY, DEFAULT_PART_BYTES),
+                Long.getLong(READ_TIMEOUT_PROPERTY, DEFAULT_READ_TIMEOUT_MILLIS));
+    }//EoCon
+
+    /**
+     * @param parallelism range requests per blob
+     * @param partbytes smallest part worth a connection of its own
+     * @param timeoutmillis time a connection may go without receiving data
+     */
+    public BlobDownloader(int parallelism, long partbytes, long timeoutmillis) {
+        if (parallelism < 1 || partbytes < 1 || timeoutmillis < 1) {
+            throw new IllegalArgumentException("Invalid download configuration");
+        }
+        this.parallelism = parallelism;
+        this.partbytes = partbytes;
+        this.timeoutmillis = timeoutmillis;
+    }//EoCon
+
+    /**
+     * Downloads the blob to target and verifies it against its digest,
+     * resuming a download of the same digest left at target. If the registry
+     * no longer answers range requests, the partial download is dropped and
+     * the blob is downloaded again in one request.
+     *
+     * @param digest algorithm:hex, e.g. sha256:...
+     * @throws DownloadImageException if the content does not match the digest
+     * @throws IOException if the download failed; it resumes on the next call
+     */
+    public void download(URI blob, String digest, Path target) throws IOException, DownloadImageException {
+        Path progressfile = target.resolveSibling(target.getFileName() + PROGRESS_SUFFIX);
+        try {
+            download(blob, digest, target, progressfile, true);
+        } catch (RangesRefusedException ex) {
+            logger.warning(ex.getMessage() + ", downloading " + digest + " again in full");
+            Files.deleteIfExists(progressfile);
+            download(blob, digest, target, progressfile, false);
+        }
+    }//EoM
+
+    /**
+     * @param ranges false to fetch the whole blob in one plain GET, without
+     * resuming and without a progress file
+     */
+    private void download(URI blob, String digest, Path target, Path progressfile, boolean ranges) throws IOException, DownloadImageException {
+        MessageDigest hash = newDigest(digest);
+        Progress progress = ranges && Files.exists(target) ? Progress.load(progressfile, digest) : null;
+        long present = 0;
+        if (progress == null) {
+            Files.deleteIfExists(progressfile);
+            Response head = request(blob, "HEAD", -1, -1, null);
+            head.close();
+            if (head.status != 200 || head.length < 0) {
+                throw new IOException("HEAD " + blob + " answered " + head.status + " without a length");
+            }
+            boolean resumable = ranges && head.ranges;
+            progress = Progress.plan(digest, head.length, resumable ? Math.max(1, Math.min(parallelism, head.length / partbytes)) : 1, resumable);
+            try (FileChannel file = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                //no holes to fill in later for a blob that ends with an empty part
+                if (progress.size > 0) {
+                    file.write(ByteBuffer.allocate(1), progress.size - 1);
+                }
+            }
+        } else {
+            present = progress.getWritten();
+            logger.info("Resuming " + digest + " at " + present + " of " + progress.size + " bytes");
+        }
+        boolean matches;
+        try (FileChannel file = FileChannel.open(target, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Transfer transfer = new Transfer(blob, file, progress, progressfile, hash);
+            transfer.run();
+            //a refused range drops the present bytes before this point
+            resumed.addAndGet(present);
+            matches = MessageDigest.isEqual(parseHex(digest.substring(digest.indexOf(':') + 1)), transfer.digest());
+        }
+        if (!matches) {
+            mismatches.incrementAndGet();
+            Files.deleteIfExists(target);
+            Files.deleteIfExists(progressfile);
+            throw new DownloadImageException("Content of " + blob + " does not match " + digest);
+        }
+        Files.deleteIfExists(progressfile);
+    }//EoM
+
+    /**
+     * @return bytes received from the network
+     */
+    public long getDownloaded() {
+        return downloaded.get();
+    }//EoM
+
+    /**
+     * @return bytes of partial downloads that did not have to be fetched again
+     */
+    public long getResumed() {
+        return resumed.get();
+    }//EoM
+
+    /**
+     * @return bytes read back from disk to be digested
+     */
+    public long getReread() {
+        return reread.get();
+    }//EoM
+
+    public long getMismatches() {
+        return mismatches.get();
+    }//EoM
+
+    @Override
+    public String toString() {
+        return "BlobDownloader{" + "parallelism=" + parallelism + ", downloaded=" + downloaded + ", resumed=" + resumed + ", reread=" + reread + ", mismatches=" + mismatches + '}';
+    }//EoM
+
+    static MessageDigest newDigest(String digest) throws IOException {
+        int separator = digest.indexOf(':');
+        if (separator <= 0) {
+            throw new IOException("Invalid digest " + digest);
+        }
+        String algorithm = digest.substring(0, separator).toUpperCase(Locale.ROOT);
+        //sha256 -> SHA-256
+        if (algorithm.startsWith("SHA") && !algorithm.startsWith("SHA-")) {
+            algorithm = "SHA-" + algorithm.substring(3);
+        }
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("Unsupported digest " + digest, ex);
+        }
+    }//EoM
+
+    private static byte[] parseHex(String hex) throws IOException {
+        if (hex.length() % 2 != 0) {
+            throw new IOException("Invalid digest " + hex);
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IOException("Invalid digest " + hex);
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }//EoM
+
+    /**
+     * Sends a request and reads the response up to its body; the bytes of the
+     * body read along with the headers are left in the buffer, flipped.
+     *
+     * @param from first byte of the range, or -1 for the whole blob
+     * @param buffer direct buffer for the response, or null for a HEAD
+     */
+    private static Response request(URI uri, String method, long from, long to, ByteBuffer buffer) throws IOException {
+        if (!"http".equalsIgnoreCase(uri.getScheme())) {
+            throw new IOException("Unsupported scheme of " + uri);
+        }
+        int port = uri.getPort() < 0 ? 80 : uri.getPort();
+        StringBuilder request = new StringBuilder(method).append(' ').append(uri.getRawPath());
+        if (uri.getRawQuery() != null) {
+            request.append('?').append(uri.getRawQuery());
+        }
+        request.append(" HTTP/1.1\r\nHost: ").append(uri.getHost()).append(':').append(port).append("\r\n");
+        if (from >= 0) {
+            request.append("Range: bytes=").append(from).append('-').append(to).append("\r\n");
+        }
+        request.append("User-Agent: maestro\r\nConnection: close\r\n\r\n");
+
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(uri.getHost(), port));
+        Response response = new Response(channel);
+        try {
+            ByteBuffer out = ByteBuffer.wrap(request.toString().getBytes(StandardCharsets.US_ASCII));
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            ByteBuffer in = buffer != null ? buffer : ByteBuffer.allocateDirect(MAX_HEADER_BYTES);
+            ((Buffer) in).clear();
+            int end;
+            while ((end = headerEnd(in)) < 0) {
+                if (!in.hasRemaining() || in.position() >= MAX_HEADER_BYTES) {
+                    throw new IOException("Response headers of " + uri + " too long");
+                }
+                if (channel.read(in) < 0) {
+                    throw new EOFException("Connection closed before the response of " + uri);
+                }
+            }
+            byte[] header = new byte[end];
+            for (int i = 0; i < end; i++) {
+                header[i] = in.get(i);
+            }
+            response.parse(new String(header, StandardCharsets.ISO_8859_1), uri);
+            ((Buffer) in).limit(in.position());
+            ((Buffer) in).position(end + 4);
+            return response;
+        } catch (IOException | RuntimeException ex) {
+            response.close();
+            throw ex;
+        }
+    }//EoM
+
+    //index of the \r\n\r\n that ends the headers, or -1
+    private static int headerEnd(ByteBuffer in) {
+        for (int i = 3; i < in.position(); i++) {
+            if (in.get(i) == '\n' && in.get(i - 1) == '\r' && in.get(i - 2) == '\n' && in.get(i - 3) == '\r') {
+                return i - 3;
+            }
+        }
+        return -1;
+    }//EoM
+
+    private static final class Response {
+
+        private final SocketChannel channel;
+        private int status;
+        private long length = -1;
+        private long rangestart = -1;
+        private boolean ranges = false;
+
+        private Response(SocketChannel channel) {
+            this.channel = channel;
+        }//EoCon
+
+        private void parse(String header, URI uri) throws IOException {
+            String[] lines = header.split("\r\n");
+            String[] statusline = lines[0].split(" ");
+            if (statusline.length < 2 || !statusline[0].startsWith("HTTP/1.")) {
+                throw new IOException("Malformed response of " + uri + ": " + lines[0]);
+            }
+            try {
+                status = Integer.parseInt(statusline[1]);
+                for (int i = 1; i < lines.length; i++) {
+                    int colon = lines[i].indexOf(':');
+                    if (colon <= 0) {
+                        continue;
+                    }
+                    String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                    String value = lines[i].substring(colon + 1).trim();
+                    switch (name) {
+                        case "content-length":
+                            length = Long.parseLong(value);
+                            break;
+                        case "accept-ranges":
+                            ranges = value.toLowerCase(Locale.ROOT).contains("bytes");
+                            break;
+                        case "content-range":
+                            //bytes 100-199/1000
+                            rangestart = Long.parseLong(value.substring(value.indexOf(' ') + 1, value.indexOf('-')));
+                            break;
+                        case "transfer-encoding":
+                            if (!value.equalsIgnoreCase("identity")) {
+                                throw new IOException("Unsupported transfer encoding " + value + " of " + uri);
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            } catch (NumberFormatException | StringIndexOutOfBoundsException ex) {
+                throw new IOException("Malformed response of " + uri, ex);
+            }
+        }//EoM
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                logger.log(Level.FINE, null, ex);
+            }
+        }//EoM
+
+    }//EoC
+
+    /**
+     * One download of a blob: fetches the unfinished parts in parallel and
+     * digests the blob from its front.
+     */
+    private final class Transfer {
+
+        private final URI blob;
+        private final FileChannel file;
+        private final Progress progress;
+        private final Path progressfile;
+        private final MessageDigest hash;
+        private final List<Response> open = new ArrayList<>();
+        private final ByteBuffer readback = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private volatile boolean aborted = false;
+        private volatile boolean finished = false;
+        //a range request was answered with the whole blob
+        private volatile boolean refused = false;
+        private volatile Cancellable watchdog;
+        //guarded by this
+        private long verified = 0;
+        private boolean hashing = false;
+        private long checkpointed = 0;
+
+        private Transfer(URI blob, FileChannel file, Progress progress, Path progressfile, MessageDigest hash) {
+            this.blob = blob;
+            this.file = file;
+            this.progress = progress;
+            this.progressfile = progressfile;
+            this.hash = hash;
+        }//EoCon
+
+        private void run() throws IOException {
+            List<Future<?>> parts = new ArrayList<>();
+            for (Part part : progress.parts) {
+                if (!part.isComplete()) {
+                    parts.add(connections.submit(() -> {
+                        fetch(part);
+                        return null;
+                    }));
+                }
+            }
+            watch();
+            IOException failure = null;
+            try {
+                for (Future<?> part : parts) {
+                    try {
+                        part.get();
+                    } catch (ExecutionException ex) {
+                        if (failure == null) {
+                            failure = ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException("Download of " + blob + " failed", ex.getCause());
+                            abort();
+                        }
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        abort();
+                        failure = new InterruptedIOException("Download of " + blob + " interrupted");
+                        break;
+                    }
+                }
+            } finally {
+                finished = true;
+                watchdog.cancel();
+            }
+            if (refused) {
+                throw new RangesRefusedException("GET " + blob + " with a range answered 200");
+            }
+            if (failure != null) {
+                if (progress.resumable) {
+                    checkpoint();
+                }
+                throw failure;
+            }
+            //the parts that were already complete when resuming
+            drain(-1, null);
+        }//EoM
+
+        private void fetch(Part part) throws IOException {
+            long from = part.start + part.written;
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            Response response = request(blob, "GET", progress.resumable ? from : -1, part.end - 1, buffer);
+            synchronized (open) {
+                open.add(response);
+            }
+            try {
+                if (progress.resumable && response.status == 200) {
+                    refused = true;
+                }
+                if (progress.resumable ? response.status != 206 || response.rangestart != from : response.status != 200) {
+                    throw new IOException("GET " + blob + " from " + from + " answered " + response.status);
+                }
+                while (from < part.end) {
+                    if (aborted) {
+                        throw new InterruptedIOException("Download of " + blob + " aborted");
+                    }
+                    if (!buffer.hasRemaining()) {
+                        ((Buffer) buffer).clear();
+                        int count = response.channel.read(buffer);
+                        ((Buffer) buffer).flip();
+                        if (count < 0) {
+                            throw new EOFException("Connection closed at " + from + " of part " + part.start + "-" + part.end + " of " + blob);
+                        }
+                        part.touched = System.currentTimeMillis();
+                        continue;
+                    }
+                    if (buffer.remaining() > part.end - from) {
+                        ((Buffer) buffer).limit(buffer.position() + (int) (part.end - from));
+                    }
+                    ByteBuffer view = buffer.duplicate();
+                    int length = buffer.remaining();
+                    while (buffer.hasRemaining()) {
+                        file.write(buffer, from + length - buffer.remaining());
+                    }
+                    downloaded.addAndGet(length);
+                    written(part, from, view);
+                    from += length;
+                }
+            } finally {
+                synchronized (open) {
+                    open.remove(response);
+                }
+                response.close();
+            }
+        }//EoM
+
+        /**
+         * Records bytes written at offset; the thread at the front of the blob
+         * digests them from the buffer and then catches up with the bytes
+         * that other parts have written ahead of it.
+         */
+        private void written(Part part, long offset, ByteBuffer bytes) throws IOException {
+            boolean checkpoint;
+            synchronized (this) {
+                part.written += bytes.remaining();
+                checkpoint = progress.resumable && progress.getWritten() - checkpointed >= CHECKPOINT_BYTES;
+                if (checkpoint) {
+                    checkpointed = progress.getWritten();
+                }
+            }
+            drain(offset, bytes);
+            if (checkpoint) {
+                checkpoint();
+            }
+        }//EoM
+
+        private void drain(long offset, ByteBuffer bytes) throws IOException {
+            long available;
+            synchronized (this) {
+                available = progress.contiguous(verified);
+                if (hashing || available <= verified) {
+                    return;
+                }
+                hashing = true;
+            }
+            long position = verified;
+            try {
+                while (true) {
+                    if (offset == position && bytes != null) {
+                        position += bytes.remaining();
+                        hash.update(bytes);
+                        bytes = null;
+                    } else {
+                        position += readback(position, available);
+                    }
+                    synchronized (this) {
+                        verified = position;
+                        available = progress.contiguous(verified);
+                        if (available <= verified) {
+                            hashing = false;
+                            return;
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException ex) {
+                synchronized (this) {
+                    hashing = false;
+                }
+                throw ex;
+            }
+        }//EoM
+
+        //digests the file from position up to end, at most a buffer at a time
+        private int readback(long position, long end) throws IOException {
+            ((Buffer) readback).clear();
+            if (readback.remaining() > end - position) {
+                ((Buffer) readback).limit((int) (end - position));
+            }
+            int count = file.read(readback, position);
+            if (count <= 0) {
+                throw new EOFException("Partial download of " + blob + " ends at " + position);
+            }
+            ((Buffer) readback).flip();
+            hash.update(readback);
+            reread.addAndGet(count);
+            return count;
+        }//EoM
+
+        private byte[] digest() throws IOException {
+            synchronized (this) {
+                if (verified != progress.size) {
+                    throw new IOException("Digested " + verified + " of " + progress.size + " bytes of " + blob);
+                }
+            }
+            return hash.digest();
+        }//EoM
+
+        private void checkpoint() {
+            byte[] snapshot;
+            synchronized (this) {
+                snapshot = progress.toBytes();
+            }
+            try {
+                Path temporary = progressfile.resolveSibling(progressfile.getFileName() + ".tmp");
+                Files.write(temporary, snapshot);
+                Files.move(temporary, progressfile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Could not checkpoint " + progressfile, ex);
+            }
+        }//EoM
+
+        private void abort() {
+            aborted = true;
+            synchronized (open) {
+                for (Response response : open) {
+                    response.close();
+                }
+            }
+        }//EoM
+
+        //closes the connections once a part has stopped receiving
+        private void watch() {
+            watchdog = SystemScheduler.getTimer().schedule(() -> {
+                long now = System.currentTimeMillis();
+                boolean stalled = false;
+                for (Part part : progress.parts) {
+                    stalled |= !part.isComplete() && now - part.touched > timeoutmillis;
+                }
+                if (stalled) {
+                    logger.warning("Download of " + blob + " stalled");
+                    abort();
+                } else if (!finished) {
+                    watch();
+                }
+            }, timeoutmillis);
+        }//EoM
+
+    }//EoC
+
+    //the registry ignored a range request, so the parts cannot be resumed
+    private static final class RangesRefusedException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private RangesRefusedException(String message) {
+            super(message);
+        }//EoCon
+
+    }//EoC
+
+    private static final class Part {
+
+        private final long start;
+        private final long end;
+        //guarded by the Transfer
+        private long written;
+        private volatile long touched = System.currentTimeMillis();
+
+        private Part(long start, long end, long written) {
+            this.start = start;
+            this.end = end;
+            this.written = written;
+        }//EoCon
+
+        private boolean isComplete() {
+            return start + written >= end;
+        }//EoM
+
+    }//EoC
+
+    /**
+     * The parts of a download and how far each has been written, as stored
+     * in the progress file.
+     */
+    private static final class Progress {
+
+        private final String digest;
+        private final long size;
+        private final boolean resumable;
+        private final Part[] parts;
+
+        private Progress(String digest, long size, boolean resumable, Part[] parts) {
+            this.digest = digest;
+            this.size = size;
+            this.resumable = resumable;
+            this.parts = parts;
+        }//EoCon
+
+        private static Progress plan(String digest, long size, long count, boolean resumable) {
+            Part[] parts = new Part[(int) count];
+            for (int i = 0; i < count; i++) {
+                parts[i] = new Part(size * i / count, size * (i + 1) / count, 0);
+            }
+            return new Progress(digest, size, resumable, parts);
+        }//EoM
+
+        //null if there is no usable progress of this digest
+        private static Progress load(Path progressfile, String digest) {
+            if (!Files.exists(progressfile)) {
+                return null;
+            }
+            try (DataInputStream input = new DataInputStream(Files.newInputStream(progressfile))) {
+                if (input.readInt() != PROGRESS_MAGIC || !input.readUTF().equals(digest)) {
+                    return null;
+                }
+                long size = input.readLong();
+                Part[] parts = new Part[input.readInt()];
+                long next = 0;
+                for (int i = 0; i < parts.length; i++) {
+                    long start = input.readLong();
+                    long end = input.readLong();
+                    long written = input.readLong();
+                    if (start != next || end < start || written < 0 || written > end - start) {
+                        return null;
+                    }
+                    parts[i] = new Part(start, end, written);
+                    next = end;
+                }
+                return next == size && parts.length > 0 ? new Progress(digest, size, true, parts) : null;
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Ignoring unreadable " + progressfile, ex);
+                return null;
+            }
+        }//EoM
+
+        private byte[] toBytes() {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream output = new DataOutputStream(bytes);
+                output.writeInt(PROGRESS_MAGIC);
+                output.writeUTF(digest);
+                output.writeLong(size);
+                output.writeInt(parts.length);
+                for (Part part : parts) {
+                    output.writeLong(part.start);
+                    output.writeLong(part.end);
+                    output.writeLong(part.written);
+                }
+                output.flush();
+                return bytes.toByteArray();
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }//EoM
+
+        private long getWritten() {
+            long written = 0;
+            for (Part part : parts) {
+                written += part.written;
+            }
+            return written;
+        }//EoM
+
+        //end of the bytes written without a gap from position on
+        private long contiguous(long position) {
+            for (Part part : parts) {
+                if (position >= part.end) {
+                    continue;
+                }
+                if (part.start + part.written < part.end) {
+                    return Math.max(position, part.start + part.written);
+                }
+                position = part.end;
+            }
+            return position;
+        }//EoM
+
+    }//EoC
+
+}//EoC
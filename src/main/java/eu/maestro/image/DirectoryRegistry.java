@@ -0,0 +1,42 @@
+package eu.maestro.image;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registry backed by a local directory. The layers of an image are listed,
+ * one digest per line, in manifests/&lt;image&gt; and every blob is stored in
+ * blobs/&lt;algorithm&gt;/&lt;hex&gt;.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class DirectoryRegistry implements ImageRegistry {
+
+    private final Path root;
+
+    public DirectoryRegistry(Path root) {
+        this.root = root;
+    }//EoCon
+
+    @Override
+    public List<String> getLayers(String image) throws IOException {
+        List<String> layers = new ArrayList<>();
+        for (String line : Files.readAllLines(root.resolve("manifests").resolve(ImageCache.manifestName(image)), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                layers.add(line.trim());
+            }
+        }
+        return layers;
+    }//EoM
+
+    @Override
+    public void download(String digest, Path target) throws IOException {
+        Files.copy(ImageCache.blobPath(root.resolve("blobs"), digest), target, StandardCopyOption.REPLACE_EXISTING);
+    }//EoM
+
+}//EoC
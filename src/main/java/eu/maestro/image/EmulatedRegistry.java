@@ -0,0 +1,57 @@
+package eu.maestro.image;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stand-in registry: every image has a single layer whose digest is derived
+ * from the image reference, and a download takes a fixed time, which it
+ * spends on an I/O thread of the ImageCache.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class EmulatedRegistry implements ImageRegistry {
+
+    private final long downloadmillis;
+
+    public EmulatedRegistry(long downloadmillis) {
+        this.downloadmillis = downloadmillis;
+    }//EoCon
+
+    @Override
+    public List<String> getLayers(String image) throws IOException {
+        return Collections.singletonList(digest(image.getBytes(StandardCharsets.UTF_8)));
+    }//EoM
+
+    @Override
+    public void download(String digest, Path target) throws IOException {
+        try {
+            Thread.sleep(downloadmillis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Download of " + digest + " interrupted");
+        }
+        Files.write(target, digest.getBytes(StandardCharsets.UTF_8));
+    }//EoM
+
+    static String digest(byte[] content) throws IOException {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder sb = new StringBuilder("sha256:");
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+    }//EoM
+
+}//EoC
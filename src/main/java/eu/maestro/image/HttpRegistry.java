@@ -0,0 +1,70 @@
+package eu.maestro.image;
+
+import eu.maestro.agent.exception.DownloadImageException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registry reached over HTTP with the layout of a DirectoryRegistry: the
+ * layers of an image are listed in &lt;base&gt;/manifests/&lt;image&gt; and
+ * every blob is served from &lt;base&gt;/blobs/&lt;algorithm&gt;/&lt;hex&gt;.
+ * Blobs are fetched by the BlobDownloader.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class HttpRegistry implements ImageRegistry {
+
+    private final URI base;
+    private final BlobDownloader downloader;
+
+    public HttpRegistry(URI base) {
+        this(base, new BlobDownloader());
+    }//EoCon
+
+    public HttpRegistry(URI base, BlobDownloader downloader) {
+        String path = base.toString();
+        this.base = URI.create(path.endsWith("/") ? path : path + "/");
+        this.downloader = downloader;
+    }//EoCon
+
+    @Override
+    public List<String> getLayers(String image) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) base.resolve("manifests/" + ImageCache.manifestName(image)).toURL().openConnection();
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Manifest of " + image + " answered " + connection.getResponseCode());
+            }
+            List<String> layers = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty()) {
+                        layers.add(line.trim());
+                    }
+                }
+            }
+            return layers;
+        } finally {
+            connection.disconnect();
+        }
+    }//EoM
+
+    @Override
+    public void download(String digest, Path target) throws IOException, DownloadImageException {
+        //validates the digest the same way as the cache does
+        ImageCache.blobPath(target.getParent(), digest);
+        downloader.download(base.resolve("blobs/" + digest.replace(':', '/')), digest, target);
+    }//EoM
+
+    public BlobDownloader getDownloader() {
+        return downloader;
+    }//EoM
+
+}//EoC
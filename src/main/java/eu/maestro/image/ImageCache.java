@@ -0,0 +1,376 @@
+package eu.maestro.image;
+
+import eu.maestro.agent.Agent;
+import eu.maestro.agent.exception.DownloadImageException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Local, content-addressed cache of image layers shared by all agents and
+ * deployments of the JVM. Layers are stored once per digest; concurrent
+ * requests for a digest that is being downloaded wait for that single
+ * download. The cache is bounded in bytes and evicts the least recently used
+ * layers that are not pinned: every layer returned by pull() or fetch() stays
+ * pinned until it is given back with release(). The partial download of a
+ * layer is kept for the registry to resume if it left a progress file next to
+ * it. Manifests and layers are fetched on daemon I/O threads of their own,
+ * never on the threads of the agents.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class ImageCache {
+
+    private static final Logger logger = Logger.getLogger(ImageCache.class.getName());
+
+    public static final String DIRECTORY_PROPERTY = "maestro.image.cache.dir";
+    public static final String MAX_BYTES_PROPERTY = "maestro.image.cache.maxbytes";
+    public static final String REGISTRY_DIRECTORY_PROPERTY = "maestro.image.registry.dir";
+    public static final String REGISTRY_URL_PROPERTY = "maestro.image.registry.url";
+    public static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024 * 1024;
+
+    private static final AtomicInteger threads = new AtomicInteger();
+    //blocking registry calls; the number of downloads is bounded by the DownloadScheduler
+    private static final ExecutorService io = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "maestro-image-io-" + threads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static ImageCache shared = null;
+
+    private final Path root;
+    private final long maxbytes;
+    private final ImageRegistry registry;
+
+    //in access order; both maps are guarded by this
+    private final LinkedHashMap<String, Layer> layers = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Download> inflight = new HashMap<>();
+    private long bytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ImageCache(Path root, long maxbytes, ImageRegistry registry) throws IOException {
+        this.root = root;
+        this.maxbytes = maxbytes;
+        this.registry = registry;
+        Files.createDirectories(root);
+        load();
+    }//EoCon
+
+    /**
+     * The cache of the JVM, configured from system properties. Without a
+     * registry url or directory the EmulatedRegistry is used. Without a cache
+     * directory the layers are kept in a temporary directory of this process,
+     * removed when it exits, so that no run starts with the layers of an
+     * earlier one.
+     */
+    public static synchronized ImageCache getShared() throws IOException {
+        if (shared == null) {
+            String configured = System.getProperty(DIRECTORY_PROPERTY);
+            Path directory;
+            if (configured != null) {
+                directory = Paths.get(configured);
+            } else {
+                directory = Files.createTempDirectory("maestro-images");
+                Path created = directory;
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> delete(created), "maestro-image-cleanup"));
+            }
+            String registryurl = System.getProperty(REGISTRY_URL_PROPERTY);
+            String registrydirectory = System.getProperty(REGISTRY_DIRECTORY_PROPERTY);
+            ImageRegistry registry;
+            if (registryurl != null) {
+                registry = new HttpRegistry(URI.create(registryurl));
+            } else if (registrydirectory != null) {
+                registry = new DirectoryRegistry(Paths.get(registrydirectory));
+            } else {
+                registry = new EmulatedRegistry(Agent.EMULATE_MAX_DOWNLOADFILE_MILLISECONDS);
+            }
+            shared = new ImageCache(directory, Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES), registry);
+        }
+        return shared;
+    }//EoM
+
+    private static void delete(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException | UncheckedIOException ex) {
+            logger.log(Level.FINE, null, ex);
+        }
+    }//EoM
+
+    //picks up the layers left by a previous run
+    private void load() throws IOException {
+        try (DirectoryStream<Path> algorithms = Files.newDirectoryStream(root)) {
+            for (Path algorithm : algorithms) {
+                if (!Files.isDirectory(algorithm)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> blobs = Files.newDirectoryStream(algorithm)) {
+                    for (Path blob : blobs) {
+                        String name = blob.getFileName().toString();
+                        if (name.endsWith(".partial")) {
+                            if (!Files.exists(blob.resolveSibling(name + BlobDownloader.PROGRESS_SUFFIX))) {
+                                Files.deleteIfExists(blob);
+                            }
+                        } else if (name.endsWith(".tmp")) {
+                            Files.deleteIfExists(blob);
+                        } else if (name.endsWith(BlobDownloader.PROGRESS_SUFFIX)) {
+                            if (!Files.exists(blob.resolveSibling(name.substring(0, name.length() - BlobDownloader.PROGRESS_SUFFIX.length())))) {
+                                Files.deleteIfExists(blob);
+                            }
+                        } else {
+                            long size = Files.size(blob);
+                            layers.put(algorithm.getFileName() + ":" + name, new Layer(size, 0));
+                            bytes += size;
+                        }
+                    }
+                }
+            }
+        }
+        evict();
+    }//EoM
+
+    /**
+     * Makes every layer of the image available locally. The manifest and the
+     * layers are fetched on the I/O threads of the cache, so the caller is
+     * never blocked.
+     *
+     * @return completes with the paths of the layers, base layer first, all
+     * pinned until release(), or exceptionally with the IOException or
+     * DownloadImageException of the first layer that failed, none pinned
+     */
+    public CompletableFuture<List<Path>> pull(String image) {
+        CompletableFuture<List<String>> manifest = CompletableFuture.supplyAsync(() -> {
+            try {
+                return registry.getLayers(image);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }, io);
+        return manifest.thenCompose(digests -> {
+            List<CompletableFuture<Path>> fetches = new ArrayList<>();
+            for (String digest : digests) {
+                fetches.add(fetch(digest));
+            }
+            return CompletableFuture.allOf(fetches.toArray(new CompletableFuture<?>[0])).handle((ignored, error) -> {
+                List<Path> paths = new ArrayList<>();
+                for (CompletableFuture<Path> fetch : fetches) {
+                    if (!fetch.isCompletedExceptionally()) {
+                        paths.add(fetch.join());
+                    }
+                }
+                if (error != null) {
+                    release(paths);
+                    throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+                }
+                return paths;
+            });
+        });
+    }//EoM
+
+    /**
+     * Returns the local path of the layer, downloading it on the I/O threads
+     * if it is not cached. Only one download per digest is in flight at any
+     * time; concurrent requests for it complete with that download.
+     *
+     * @return completes with the path of the layer, pinned until release()
+     */
+    public CompletableFuture<Path> fetch(String digest) {
+        Path path;
+        try {
+            path = blobPath(root, digest);
+        } catch (IllegalArgumentException ex) {
+            CompletableFuture<Path> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+        Download download;
+        synchronized (this) {
+            Layer layer = layers.get(digest);
+            if (layer != null) {
+                hits.incrementAndGet();
+                layer.pins++;
+                return CompletableFuture.completedFuture(path);
+            }
+            download = inflight.get(digest);
+            if (download != null) {
+                coalesced.incrementAndGet();
+                download.pins++;
+                return download.future;
+            }
+            misses.incrementAndGet();
+            download = new Download();
+            inflight.put(digest, download);
+        }
+        Download started = download;
+        try {
+            io.execute(() -> transfer(digest, path, started));
+        } catch (RejectedExecutionException ex) {
+            synchronized (this) {
+                inflight.remove(digest);
+            }
+            download.future.completeExceptionally(ex);
+        }
+        return download.future;
+    }//EoM
+
+    //runs on an I/O thread
+    private void transfer(String digest, Path path, Download download) {
+        try {
+            Files.createDirectories(path.getParent());
+            Path partial = path.resolveSibling(path.getFileName() + ".partial");
+            registry.download(digest, partial);
+            Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            long size = Files.size(path);
+            synchronized (this) {
+                //every request that waited for the download holds a pin
+                inflight.remove(digest);
+                layers.put(digest, new Layer(size, download.pins));
+                bytes += size;
+                evict();
+            }
+            download.future.complete(path);
+        } catch (IOException | DownloadImageException | RuntimeException ex) {
+            synchronized (this) {
+                inflight.remove(digest);
+            }
+            download.future.completeExceptionally(ex);
+        }
+    }//EoM
+
+    /**
+     * Unpins layers returned by pull() or fetch(), once for every time they
+     * were returned. Unpinned layers may be evicted.
+     */
+    public synchronized void release(List<Path> paths) {
+        for (Path path : paths) {
+            Layer layer = layers.get(path.getParent().getFileName() + ":" + path.getFileName());
+            if (layer != null && layer.pins > 0) {
+                layer.pins--;
+            }
+        }
+        evict();
+    }//EoM
+
+    //must hold the monitor; the most recently used layer is never evicted
+    private void evict() {
+        Iterator<Map.Entry<String, Layer>> iterator = layers.entrySet().iterator();
+        int remaining = layers.size();
+        while (bytes > maxbytes && remaining-- > 1 && iterator.hasNext()) {
+            Map.Entry<String, Layer> eldest = iterator.next();
+            if (eldest.getValue().pins > 0) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(blobPath(root, eldest.getKey()));
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Could not evict " + eldest.getKey(), ex);
+            }
+            bytes -= eldest.getValue().size;
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }//EoM
+
+    /**
+     * Location of a blob: &lt;root&gt;/&lt;algorithm&gt;/&lt;hex&gt;.
+     */
+    static Path blobPath(Path root, String digest) {
+        int separator = digest.indexOf(':');
+        if (separator <= 0 || digest.indexOf('/') >= 0 || digest.indexOf('\\') >= 0 || digest.contains("..")) {
+            throw new IllegalArgumentException("Invalid digest " + digest);
+        }
+        return root.resolve(digest.substring(0, separator)).resolve(digest.substring(separator + 1));
+    }//EoM
+
+    /**
+     * Name of the manifest file of an image reference in a registry: the
+     * reference with ':' replaced by '_'.
+     */
+    static String manifestName(String image) {
+        if (image == null || image.isEmpty() || image.indexOf('/') >= 0 || image.indexOf('\\') >= 0 || image.contains("..")) {
+            throw new IllegalArgumentException("Invalid image " + image);
+        }
+        return image.replace(':', '_');
+    }//EoM
+
+    public long getHits() {
+        return hits.get();
+    }//EoM
+
+    public long getMisses() {
+        return misses.get();
+    }//EoM
+
+    /**
+     * @return requests that waited for a download already in flight
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }//EoM
+
+    public long getEvictions() {
+        return evictions.get();
+    }//EoM
+
+    public synchronized long getBytes() {
+        return bytes;
+    }//EoM
+
+    public synchronized int getLayerCount() {
+        return layers.size();
+    }//EoM
+
+    private static final class Layer {
+
+        private final long size;
+        //requests that got the layer and have not released it
+        private int pins;
+
+        private Layer(long size, int pins) {
+            this.size = size;
+            this.pins = pins;
+        }//EoCon
+
+    }//EoC
+
+    private static final class Download {
+
+        private final CompletableFuture<Path> future = new CompletableFuture<>();
+        //the request that started it and the ones that joined it
+        private int pins = 1;
+
+    }//EoC
+
+    @Override
+    public String toString() {
+        return "ImageCache{" + "layers=" + getLayerCount() + ", bytes=" + getBytes() + ", hits=" + hits + ", misses=" + misses + ", coalesced=" + coalesced + ", evictions=" + evictions + '}';
+    }//EoM
+
+}//EoC
@@ -0,0 +1,29 @@
+package eu.maestro.image;
+
+import eu.maestro.agent.exception.DownloadImageException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Source of images. An image reference resolves to the digests of its
+ * layers, and every layer is a blob addressed by its digest.
+ *
+ * @author Panagiotis Gouvas
+ */
+public interface ImageRegistry {
+
+    /**
+     * @return the digests of the layers of the image, base layer first
+     */
+    List<String> getLayers(String image) throws IOException;
+
+    /**
+     * Writes the blob with the given digest to target, replacing it. A
+     * registry may resume a download that an earlier call left at target.
+     *
+     * @throws DownloadImageException if the content does not match the digest
+     */
+    void download(String digest, Path target) throws IOException, DownloadImageException;
+
+}//EoI
@@ -0,0 +1,164 @@
+package eu.maestro.image;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stand-in registry for local runs and benchmarks: serves the directory of a
+ * DirectoryRegistry over HTTP, with single byte range requests, so that it
+ * can be used through an HttpRegistry. The bandwidth of every connection can
+ * be limited, as registries and the links to them commonly do.
+ *
+ * Usage: RegistryServer directory [port] [bytes/s per connection]
+ *
+ * @author Panagiotis Gouvas
+ */
+public class RegistryServer {
+
+    private static final Logger logger = Logger.getLogger(RegistryServer.class.getName());
+
+    private final Path root;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long bandwidth;
+    private volatile boolean ranges = true;
+
+    /**
+     * @param port the port on the loopback interface, 0 for any free port
+     */
+    public RegistryServer(Path root, int port) throws IOException {
+        this(root, port, 0);
+    }//EoCon
+
+    /**
+     * @param bandwidth bytes per second sent on each connection, 0 for no
+     * limit
+     */
+    public RegistryServer(Path root, int port, long bandwidth) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.bandwidth = bandwidth;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 256);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "registry-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }//EoCon
+
+    public static void main(String[] args) throws IOException {
+        RegistryServer server = new RegistryServer(Paths.get(args[0]), args.length > 1 ? Integer.parseInt(args[1]) : 5000,
+                args.length > 2 ? Long.parseLong(args[2]) : 0);
+        logger.info("Serving " + args[0] + " at " + server.getUri());
+    }//EoM
+
+    /**
+     * @param ranges false to answer range requests with the whole blob and
+     * not to advertise ranges, as a registry or proxy without range support
+     */
+    public void setRanges(boolean ranges) {
+        this.ranges = ranges;
+    }//EoM
+
+    public URI getUri() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+    }//EoM
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }//EoM
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            Path file = root.resolve(exchange.getRequestURI().getPath().substring(1)).normalize();
+            boolean head = "HEAD".equals(exchange.getRequestMethod());
+            if (!file.startsWith(root) || !Files.isRegularFile(file)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if (!head && !"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            long size = Files.size(file);
+            long from = 0;
+            long to = size - 1;
+            int status = 200;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (ranges && range != null && range.startsWith("bytes=") && range.indexOf(',') < 0) {
+                String[] bounds = range.substring(6).split("-", -1);
+                try {
+                    from = Long.parseLong(bounds[0]);
+                    to = bounds[1].isEmpty() ? size - 1 : Math.min(size - 1, Long.parseLong(bounds[1]));
+                } catch (NumberFormatException ex) {
+                    from = -1;
+                }
+                if (from < 0 || from > to) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes */" + size);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + size);
+            }
+            long length = to - from + 1;
+            if (ranges) {
+                exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            }
+            if (head) {
+                exchange.getResponseHeaders().set("Content-Length", "" + size);
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                    OutputStream body = exchange.getResponseBody()) {
+                WritableByteChannel out = Channels.newChannel(body);
+                long start = System.nanoTime();
+                long sent = 0;
+                while (sent < length) {
+                    long chunk = bandwidth > 0 ? Math.min(length - sent, Math.max(1, bandwidth / 100)) : length - sent;
+                    sent += channel.transferTo(from + sent, chunk, out);
+                    throttle(start, sent);
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            logger.log(Level.FINE, null, ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }//EoM
+
+    //holds the connection back until sent bytes are due
+    private void throttle(long start, long sent) throws InterruptedException {
+        if (bandwidth > 0) {
+            long due = start + sent * 1000000000L / bandwidth;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+    }//EoM
+
+}//EoC
@@ -0,0 +1,80 @@
+package eu.maestro.journal;
+
+import static eu.maestro.agent.Agent.STATUS_STARTED;
+import eu.maestro.util.DeploymentGraph;
+
+/**
+ * A deployment as replayed from the StatusJournal: its graph and the last
+ * journaled status of every node, 0 where none was journaled.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class JournaledDeployment {
+
+    private final int number;
+    private final String deploymentid;
+    private final DeploymentGraph graph;
+    private final int[] statuses;
+    private boolean ended = false;
+    private boolean completed = false;
+
+    JournaledDeployment(int number, String deploymentid, DeploymentGraph graph) {
+        this.number = number;
+        this.deploymentid = deploymentid;
+        this.graph = graph;
+        this.statuses = new int[graph.size()];
+    }//EoCon
+
+    void setStatus(int index, int status) {
+        if (index < statuses.length) {
+            statuses[index] = status;
+        }
+    }//EoM
+
+    void end(boolean completed) {
+        this.ended = true;
+        this.completed = completed;
+    }//EoM
+
+    /**
+     * @return the journal-local number the transitions of the deployment are
+     * recorded under
+     */
+    public int getNumber() {
+        return number;
+    }//EoM
+
+    public String getDeploymentid() {
+        return deploymentid;
+    }//EoM
+
+    public DeploymentGraph getGraph() {
+        return graph;
+    }//EoM
+
+    public int getStatus(int index) {
+        return statuses[index];
+    }//EoM
+
+    public int[] getStatuses() {
+        return statuses.clone();
+    }//EoM
+
+    public boolean isEnded() {
+        return ended;
+    }//EoM
+
+    public boolean isCompleted() {
+        return completed;
+    }//EoM
+
+    @Override
+    public String toString() {
+        int started = 0;
+        for (int status : statuses) {
+            started += status == STATUS_STARTED ? 1 : 0;
+        }
+        return "JournaledDeployment{" + deploymentid + ", " + started + "/" + statuses.length + " started" + (ended ? ", ended" : "") + '}';
+    }//EoM
+
+}//EoC
@@ -0,0 +1,583 @@
+package eu.maestro.journal;
+
+import eu.maestro.store.StatusStore;
+import eu.maestro.util.DeploymentGraph;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the status transitions of every deployment, kept in
+ * a memory-mapped file so that an orchestrator can resume its deployments
+ * after a crash instead of redeploying them.
+ *
+ * Every record is [int length][byte type][payload][int crc32 of type and
+ * payload]. A deployment is journaled once with its graph under a small
+ * journal-local number; each transition then takes 26 bytes. The file is
+ * mapped in segments of maestro.journal.segment.bytes; a record never spans
+ * two segments. Replay stops at the first zero length or checksum mismatch,
+ * so a torn tail is ignored.
+ *
+ * Appends only copy into the mapping. A single flusher thread forces the
+ * dirty segments to disk for all appends made since the previous force
+ * (group fsync) and completes the futures returned by sync().
+ *
+ * On open the journal is replayed and rewritten compactly, keeping only the
+ * unfinished deployments with the last status of each node. The same
+ * rewrite replaces the journal while it runs, whenever it would grow past
+ * maestro.journal.compact.segments segments; the flusher unmaps the
+ * segments of the replaced file.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class StatusJournal implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(StatusJournal.class.getName());
+
+    public static final String DIRECTORY_PROPERTY = "maestro.journal.dir";
+    public static final String SEGMENT_BYTES_PROPERTY = "maestro.journal.segment.bytes";
+    public static final String SYNC_MILLIS_PROPERTY = "maestro.journal.sync.millis";
+    public static final String COMPACT_SEGMENTS_PROPERTY = "maestro.journal.compact.segments";
+    public static final int DEFAULT_SEGMENT_BYTES = 16 * 1024 * 1024;
+    public static final long DEFAULT_SYNC_MILLIS = 2;
+    public static final int DEFAULT_COMPACT_SEGMENTS = 4;
+    public static final String FILE_NAME = "status.journal";
+
+    private static final byte DEPLOYMENT = 1;
+    private static final byte TRANSITION = 2;
+    private static final byte END = 3;
+    private static final byte PAD = 4;
+    //length and type before the payload, checksum after it
+    private static final int HEADER_BYTES = 5;
+    private static final int TRAILER_BYTES = 4;
+    private static final int TRANSITION_BYTES = 4 + 4 + 1 + 8;
+
+    private static StatusJournal shared = null;
+
+    private final Path file;
+    private final int segmentbytes;
+    private final long syncmillis;
+    private final int compactsegments;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    //segments of replaced files, unmapped by the flusher once it no longer forces them
+    private final List<MappedByteBuffer> retired = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+    private final Map<Integer, JournaledDeployment> recovered = new LinkedHashMap<>();
+    //deployments begun or resumed and not ended, with their last statuses
+    private final Map<Integer, JournaledDeployment> live = new LinkedHashMap<>();
+    private FileChannel channel;
+    private MappedByteBuffer current;
+    private int nextnumber = 0;
+    private boolean compacting = false;
+
+    //group sync state, guarded by the waiters
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private long appended = 0;
+    private long synced = 0;
+    private int firstdirty = Integer.MAX_VALUE;
+    private boolean closed = false;
+    private final Thread flusher;
+
+    public StatusJournal(Path directory, int segmentbytes, long syncmillis) throws IOException {
+        this(directory, segmentbytes, syncmillis, Integer.getInteger(COMPACT_SEGMENTS_PROPERTY, DEFAULT_COMPACT_SEGMENTS));
+    }//EoCon
+
+    /**
+     * Replays the journal in the directory, keeps its unfinished deployments
+     * and rewrites it without the finished ones.
+     *
+     * @param compactsegments the segments the journal grows to before it is
+     * rewritten with only the unfinished deployments
+     */
+    public StatusJournal(Path directory, int segmentbytes, long syncmillis, int compactsegments) throws IOException {
+        this.file = directory.resolve(FILE_NAME);
+        this.segmentbytes = segmentbytes;
+        this.syncmillis = syncmillis;
+        this.compactsegments = compactsegments;
+        Files.createDirectories(directory);
+        long begin = System.nanoTime();
+        if (Files.exists(file)) {
+            replay();
+        }
+        rewrite();
+        logger.info("Opened status journal " + file + " with " + recovered.size() + " unfinished deployments in " + (System.nanoTime() - begin) / 1000000 + " ms");
+        flusher = new Thread(this::flush, "maestro-journal");
+        flusher.setDaemon(true);
+        flusher.start();
+    }//EoCon
+
+    /**
+     * @return the journal in maestro.journal.dir, or null if journaling is
+     * not configured
+     */
+    public static synchronized StatusJournal getShared() throws IOException {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (shared == null && directory != null) {
+            shared = new StatusJournal(Paths.get(directory), Integer.getInteger(SEGMENT_BYTES_PROPERTY, DEFAULT_SEGMENT_BYTES), Long.getLong(SYNC_MILLIS_PROPERTY, DEFAULT_SYNC_MILLIS));
+        }
+        return shared;
+    }//EoM
+
+    /**
+     * @return the deployments that had not ended when the journal was last
+     * written, in the order they were started
+     */
+    public synchronized List<JournaledDeployment> getRecovered() {
+        return new ArrayList<>(recovered.values());
+    }//EoM
+
+    /**
+     * Journals a new deployment.
+     *
+     * @return the number its transitions are journaled under
+     */
+    public synchronized int begin(String deploymentid, DeploymentGraph graph) throws IOException {
+        int number = nextnumber++;
+        appendDeployment(number, deploymentid, graph);
+        live.put(number, new JournaledDeployment(number, deploymentid, graph));
+        return number;
+    }//EoM
+
+    /**
+     * Continues a recovered deployment under its number.
+     */
+    public synchronized void resume(JournaledDeployment deployment) {
+        JournaledDeployment resumed = recovered.remove(deployment.getNumber());
+        if (resumed != null) {
+            JournaledDeployment running = new JournaledDeployment(resumed.getNumber(), resumed.getDeploymentid(), resumed.getGraph());
+            for (int index = 0; index < resumed.getGraph().size(); index++) {
+                running.setStatus(index, resumed.getStatus(index));
+            }
+            live.put(running.getNumber(), running);
+        }
+    }//EoM
+
+    public synchronized void transition(int number, int index, int status, long time) {
+        appendTransition(number, index, status, time);
+        JournaledDeployment deployment = live.get(number);
+        if (deployment != null) {
+            deployment.setStatus(index, status);
+        }
+    }//EoM
+
+    public synchronized void end(int number, boolean completed) {
+        reserve(5);
+        current.putInt(number).put(completed ? (byte) 1 : (byte) 0);
+        seal(END, 5);
+        live.remove(number);
+    }//EoM
+
+    /**
+     * The orchestrator waits for it before it reports the end of a
+     * deployment, so a reported end is never replayed as unfinished.
+     *
+     * @return completes once everything appended so far is on disk
+     */
+    public CompletableFuture<Void> sync() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (waiters) {
+            if (synced >= appended) {
+                future.complete(null);
+            } else {
+                waiters.add(new Waiter(appended, future));
+                waiters.notifyAll();
+            }
+        }
+        return future;
+    }//EoM
+
+    private void appendDeployment(int number, String deploymentid, DeploymentGraph graph) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(number);
+        writeString(output, deploymentid);
+        output.writeInt(graph.size());
+        for (int index = 0; index < graph.size(); index++) {
+            writeString(output, graph.getName(index));
+            writeString(output, graph.getImage(index) == null ? "" : graph.getImage(index));
+            writeString(output, graph.getConfig(index) == null ? "" : graph.getConfig(index));
+            writeString(output, graph.getProbe(index) == null ? "" : graph.getProbe(index));
+            int[] dependencies = graph.getDependencies(index);
+            output.writeInt(dependencies.length);
+            for (int dependency : dependencies) {
+                output.writeInt(dependency);
+            }
+        }
+        output.flush();
+        byte[] payload = bytes.toByteArray();
+        if (HEADER_BYTES + payload.length + TRAILER_BYTES > segmentbytes) {
+            throw new IOException("Deployment " + deploymentid + " does not fit in a journal segment of " + segmentbytes + " bytes");
+        }
+        reserve(payload.length);
+        current.put(payload);
+        seal(DEPLOYMENT, payload.length);
+        nextnumber = Math.max(nextnumber, number + 1);
+    }//EoM
+
+    private void appendTransition(int number, int index, int status, long time) {
+        reserve(TRANSITION_BYTES);
+        current.putInt(number).putInt(index).put((byte) status).putLong(time);
+        seal(TRANSITION, TRANSITION_BYTES);
+    }//EoM
+
+    //leaves the position of the current segment at the start of the payload
+    private void reserve(int payload) {
+        if (current.remaining() < HEADER_BYTES + payload + TRAILER_BYTES) {
+            if (current.remaining() >= HEADER_BYTES + TRAILER_BYTES) {
+                int padding = current.remaining() - HEADER_BYTES - TRAILER_BYTES;
+                ((Buffer) current).position(current.position() + HEADER_BYTES + padding);
+                seal(PAD, padding);
+            }
+            try {
+                if (!compacting && segments.size() >= compactsegments) {
+                    rewrite();
+                }
+                if (current.remaining() < HEADER_BYTES + payload + TRAILER_BYTES) {
+                    current = map(segments.size());
+                }
+            } catch (IOException ex) {
+                throw new IllegalStateException("Status journal " + file + " cannot grow", ex);
+            }
+        }
+        ((Buffer) current).position(current.position() + HEADER_BYTES);
+    }//EoM
+
+    /**
+     * Writes the unfinished deployments with the last status of each node to
+     * a new file, forces it and moves it over the journal. The segments of
+     * the previous file are retired; if the rewrite fails they stay in use.
+     */
+    private void rewrite() throws IOException {
+        long begin = System.nanoTime();
+        Path compacted = file.resolveSibling(FILE_NAME + ".tmp");
+        Files.deleteIfExists(compacted);
+        FileChannel previouschannel = channel;
+        MappedByteBuffer previouscurrent = current;
+        List<MappedByteBuffer> previoussegments = new ArrayList<>(segments);
+        Map<Integer, JournaledDeployment> unfinished = new TreeMap<>(recovered);
+        unfinished.putAll(live);
+        segments.clear();
+        channel = FileChannel.open(compacted, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        compacting = true;
+        try {
+            current = map(0);
+            for (JournaledDeployment deployment : unfinished.values()) {
+                appendDeployment(deployment.getNumber(), deployment.getDeploymentid(), deployment.getGraph());
+                for (int index = 0; index < deployment.getGraph().size(); index++) {
+                    if (deployment.getStatus(index) != StatusStore.STATUS_UNKNOWN) {
+                        appendTransition(deployment.getNumber(), index, deployment.getStatus(index), 0);
+                    }
+                }
+            }
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException ex) {
+            retired.addAll(segments);
+            segments.clear();
+            segments.addAll(previoussegments);
+            channel.close();
+            channel = previouschannel;
+            current = previouscurrent;
+            Files.deleteIfExists(compacted);
+            throw ex;
+        } finally {
+            compacting = false;
+        }
+        retired.addAll(previoussegments);
+        if (previouschannel != null) {
+            previouschannel.close();
+            logger.info("Compacted status journal " + file + " to " + unfinished.size() + " unfinished deployments in " + (System.nanoTime() - begin) / 1000000 + " ms");
+        }
+        //the new file holds everything appended so far
+        List<Waiter> done = new ArrayList<>();
+        synchronized (waiters) {
+            synced = appended;
+            firstdirty = Integer.MAX_VALUE;
+            while (!waiters.isEmpty()) {
+                done.add(waiters.poll());
+            }
+        }
+        for (Waiter waiter : done) {
+            waiter.future.complete(null);
+        }
+    }//EoM
+
+    //writes the header and checksum around the payload that ends at the position
+    private void seal(byte type, int payload) {
+        int end = current.position();
+        int start = end - payload - HEADER_BYTES;
+        current.put(start + 4, type);
+        ByteBuffer record = ((ByteBuffer) current).duplicate();
+        ((Buffer) record).position(start + 4).limit(end);
+        crc.reset();
+        crc.update(record);
+        current.putInt((int) crc.getValue());
+        //the length goes last, a record is only visible once complete
+        current.putInt(start, payload);
+        synchronized (waiters) {
+            appended += end + TRAILER_BYTES - start;
+            firstdirty = Math.min(firstdirty, segments.size() - 1);
+        }
+    }//EoM
+
+    private MappedByteBuffer map(int segment) throws IOException {
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, (long) segment * segmentbytes, segmentbytes);
+        segments.add(mapped);
+        return mapped;
+    }//EoM
+
+    private void flush() {
+        while (true) {
+            long target;
+            int first;
+            synchronized (waiters) {
+                while (!closed && synced >= appended) {
+                    try {
+                        waiters.wait(syncmillis);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                if (closed && synced >= appended) {
+                    return;
+                }
+                target = appended;
+                first = firstdirty;
+                firstdirty = Integer.MAX_VALUE;
+            }
+            List<MappedByteBuffer> dirty;
+            synchronized (this) {
+                //the previous force is over, nothing uses them any more
+                unmap(retired);
+                dirty = new ArrayList<>(segments.subList(Math.min(first, segments.size()), segments.size()));
+            }
+            for (MappedByteBuffer segment : dirty) {
+                segment.force();
+            }
+            List<Waiter> done = new ArrayList<>();
+            synchronized (waiters) {
+                synced = Math.max(synced, target);
+                while (!waiters.isEmpty() && waiters.peek().position <= target) {
+                    done.add(waiters.poll());
+                }
+            }
+            for (Waiter waiter : done) {
+                waiter.future.complete(null);
+            }
+        }
+    }//EoM
+
+    private void replay() throws IOException {
+        try (FileChannel input = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = input.size();
+            long[] records = new long[1];
+            for (long offset = 0; offset < size; offset += segmentbytes) {
+                ByteBuffer segment = input.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(segmentbytes, size - offset));
+                if (!replay(segment, records)) {
+                    break;
+                }
+            }
+            logger.info("Replayed " + records[0] + " journal records");
+        }
+        recovered.values().removeIf(JournaledDeployment::isEnded);
+    }//EoM
+
+    /**
+     * @return false if the log ends in this segment
+     */
+    private boolean replay(ByteBuffer segment, long[] records) {
+        CRC32 check = new CRC32();
+        while (segment.remaining() >= HEADER_BYTES + TRAILER_BYTES) {
+            int start = segment.position();
+            int length = segment.getInt(start);
+            if ((length == 0 && segment.get(start + 4) != PAD) || length < 0 || length > segment.remaining() - HEADER_BYTES - TRAILER_BYTES) {
+                return false;
+            }
+            ByteBuffer record = segment.duplicate();
+            ((Buffer) record).position(start + 4).limit(start + HEADER_BYTES + length);
+            check.reset();
+            check.update(record);
+            if ((int) check.getValue() != segment.getInt(start + HEADER_BYTES + length)) {
+                logger.warning("Status journal " + file + " ends with a torn record");
+                return false;
+            }
+            byte type = segment.get(start + 4);
+            ByteBuffer payload = segment.duplicate();
+            ((Buffer) payload).position(start + HEADER_BYTES).limit(start + HEADER_BYTES + length);
+            apply(type, payload.slice());
+            ((Buffer) segment).position(start + HEADER_BYTES + length + TRAILER_BYTES);
+            records[0]++;
+            if (type == PAD) {
+                return true;
+            }
+        }
+        return true;
+    }//EoM
+
+    private void apply(byte type, ByteBuffer payload) {
+        switch (type) {
+            case DEPLOYMENT: {
+                int number = payload.getInt();
+                String deploymentid = readString(payload);
+                int size = payload.getInt();
+                DeploymentGraph.Builder builder = new DeploymentGraph.Builder();
+                String[] names = new String[size];
+                int[][] dependencies = new int[size][];
+                for (int index = 0; index < size; index++) {
+                    names[index] = readString(payload);
+                    builder.addNode(names[index]);
+                    String image = readString(payload);
+                    if (!image.isEmpty()) {
+                        builder.setImage(names[index], image);
+                    }
+                    String config = readString(payload);
+                    if (!config.isEmpty()) {
+                        builder.setConfig(names[index], config);
+                    }
+                    String probe = readString(payload);
+                    if (!probe.isEmpty()) {
+                        builder.setProbe(names[index], probe);
+                    }
+                    dependencies[index] = new int[payload.getInt()];
+                    for (int i = 0; i < dependencies[index].length; i++) {
+                        dependencies[index][i] = payload.getInt();
+                    }
+                }
+                for (int index = 0; index < size; index++) {
+                    for (int dependency : dependencies[index]) {
+                        builder.addDependency(names[index], names[dependency]);
+                    }
+                }
+                recovered.put(number, new JournaledDeployment(number, deploymentid, builder.build()));
+                nextnumber = Math.max(nextnumber, number + 1);
+                break;
+            }
+            case TRANSITION: {
+                JournaledDeployment deployment = recovered.get(payload.getInt());
+                int index = payload.getInt();
+                int status = payload.get();
+                if (deployment != null) {
+                    deployment.setStatus(index, status);
+                }
+                break;
+            }
+            case END: {
+                JournaledDeployment deployment = recovered.get(payload.getInt());
+                if (deployment != null) {
+                    deployment.end(payload.get() == 1);
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }//EoM
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }//EoM
+
+    private static String readString(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.getInt()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }//EoM
+
+    /**
+     * Forces the remaining appends and stops the flusher.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (waiters) {
+            closed = true;
+            waiters.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException ex) {
+            logger.log(Level.SEVERE, null, ex);
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            unmap(retired);
+            unmap(segments);
+            channel.close();
+        }
+        synchronized (StatusJournal.class) {
+            if (shared == this) {
+                shared = null;
+            }
+        }
+    }//EoM
+
+    /**
+     * Releases the mappings at once instead of when they are garbage
+     * collected, and clears the list. A released mapping must not be used.
+     */
+    private static void unmap(List<MappedByteBuffer> mappings) {
+        for (MappedByteBuffer mapping : mappings) {
+            try {
+                //Java 9 and later
+                Field unsafe = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+                unsafe.setAccessible(true);
+                unsafe.getType().getMethod("invokeCleaner", ByteBuffer.class).invoke(unsafe.get(null), mapping);
+            } catch (NoSuchMethodException ex) {
+                try {
+                    Method cleaner = mapping.getClass().getMethod("cleaner");
+                    cleaner.setAccessible(true);
+                    Object clean = cleaner.invoke(mapping);
+                    clean.getClass().getMethod("clean").invoke(clean);
+                } catch (ReflectiveOperationException | RuntimeException java8) {
+                    logger.log(Level.FINE, "Mapping left to the garbage collector", java8);
+                }
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                logger.log(Level.FINE, "Mapping left to the garbage collector", ex);
+            }
+        }
+        mappings.clear();
+    }//EoM
+
+    public Path getFile() {
+        return file;
+    }//EoM
+
+    private static final class Waiter {
+
+        private final long position;
+        private final CompletableFuture<Void> future;
+
+        private Waiter(long position, CompletableFuture<Void> future) {
+            this.position = position;
+            this.future = future;
+        }
+
+    }//EoC
+
+}//EoC
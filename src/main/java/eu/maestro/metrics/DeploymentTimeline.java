@@ -0,0 +1,222 @@
+package eu.maestro.metrics;
+
+import static eu.maestro.agent.Agent.STATUS_IMAGEDOWNLOADED;
+import static eu.maestro.agent.Agent.STATUS_INITIALIZED;
+import static eu.maestro.agent.Agent.STATUS_SPAWNING;
+import static eu.maestro.agent.Agent.STATUS_STARTED;
+import static eu.maestro.agent.Agent.STATUS_TRIGGERED_CONTAINER_START;
+import static eu.maestro.agent.Agent.STATUS_WAITING_FOR_DEPENDENCIES;
+import eu.maestro.store.StatusKey;
+import eu.maestro.store.StatusWatcher;
+import eu.maestro.time.Scheduler;
+import eu.maestro.util.DeploymentGraph;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records, for every node of a deployment, the time at which each status was
+ * observed, relative to the start of the deployment. Built from the status
+ * events the orchestrator already watches, so it works wherever the agents
+ * run, and recording allocates nothing.
+ *
+ * From the recorded times a node's deployment splits into initialize,
+ * download, dependency wait, start and check. The critical path is found by
+ * walking back from the node that started last to the dependency that
+ * released it, as long as the node actually waited for that dependency.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class DeploymentTimeline implements StatusWatcher {
+
+    //one column per status from STATUS_SPAWNING to STATUS_STARTED, then the end
+    private static final int END = STATUS_STARTED;
+    private static final int COLUMNS = END + 1;
+    private static final long NONE = -1;
+
+    private final DeploymentGraph graph;
+    private final String deploymentid;
+    private final Scheduler scheduler;
+    private final long startTime;
+    private final AtomicLongArray times;
+    private final AtomicIntegerArray failures;
+    private volatile long endTime = NONE;
+
+    public DeploymentTimeline(DeploymentGraph graph, String deploymentid, Scheduler scheduler) {
+        this.graph = graph;
+        this.deploymentid = deploymentid;
+        this.scheduler = scheduler;
+        this.startTime = scheduler.currentTimeMillis();
+        int size = graph.size();
+        times = new AtomicLongArray(size * COLUMNS);
+        for (int i = 0; i < times.length(); i++) {
+            times.set(i, NONE);
+        }
+        failures = new AtomicIntegerArray(size);
+    }//EoCon
+
+    @Override
+    public void onStatus(StatusKey key, int status) {
+        int index = key.getIndex();
+        if (index >= graph.size() || !key.getDeploymentid().equals(deploymentid)) {
+            return;
+        }
+        long now = scheduler.currentTimeMillis() - startTime;
+        if (status < 0) {
+            failures.compareAndSet(index, 0, status);
+            times.compareAndSet(index * COLUMNS + END, NONE, now);
+        } else if (status >= STATUS_SPAWNING && status <= STATUS_STARTED) {
+            //first observation wins, a status is reached only once
+            times.compareAndSet(index * COLUMNS + status - 1, NONE, now);
+            if (status == STATUS_STARTED) {
+                times.compareAndSet(index * COLUMNS + END, NONE, now);
+            }
+        }
+    }//EoM
+
+    /**
+     * Closes the timeline; the end time is the deployment time.
+     */
+    public void finish() {
+        endTime = scheduler.currentTimeMillis() - startTime;
+    }//EoM
+
+    /**
+     * @return milliseconds from the start of the deployment until the node
+     * was observed in the status, or -1 if it never was
+     */
+    public long getTime(int index, int status) {
+        return times.get(index * COLUMNS + status - 1);
+    }//EoM
+
+    //when the node started or failed
+    private long getEnd(int index) {
+        return times.get(index * COLUMNS + END);
+    }//EoM
+
+    /**
+     * @return the status the node failed with, or 0
+     */
+    public int getFailure(int index) {
+        return failures.get(index);
+    }//EoM
+
+    //the node could start once the last of its dependencies had started
+    private long getReleaseTime(int index) {
+        long release = NONE;
+        for (int dependency : graph.getDependencies(index)) {
+            release = Math.max(release, getTime(dependency, STATUS_STARTED));
+        }
+        return release;
+    }//EoM
+
+    /**
+     * @return the node indexes on the critical path, from the first node to
+     * start to the node that ended last
+     */
+    public List<Integer> getCriticalPath() {
+        List<Integer> path = new ArrayList<>();
+        int last = -1;
+        for (int index = 0; index < graph.size(); index++) {
+            if (getEnd(index) != NONE && (last < 0 || getEnd(index) > getEnd(last))) {
+                last = index;
+            }
+        }
+        int index = last;
+        while (index >= 0) {
+            path.add(index);
+            int gating = -1;
+            long release = getReleaseTime(index);
+            long ready = Math.max(getTime(index, STATUS_IMAGEDOWNLOADED), getTime(index, STATUS_WAITING_FOR_DEPENDENCIES));
+            if (release != NONE && ready != NONE && release >= ready) {
+                for (int dependency : graph.getDependencies(index)) {
+                    if (getTime(dependency, STATUS_STARTED) == release) {
+                        gating = dependency;
+                        break;
+                    }
+                }
+            }
+            index = gating;
+        }
+        Collections.reverse(path);
+        return path;
+    }//EoM
+
+    private static long between(long from, long to) {
+        return from == NONE || to == NONE ? NONE : to - from;
+    }//EoM
+
+    private static String format(long millis) {
+        return millis == NONE ? "-" : Long.toString(millis);
+    }//EoM
+
+    /**
+     * Phase durations of a node in milliseconds, -1 where unknown: initialize,
+     * download, dependency wait, start and check.
+     */
+    public long[] getPhases(int index) {
+        long downloaded = getTime(index, STATUS_IMAGEDOWNLOADED);
+        long ready = Math.max(downloaded, getTime(index, STATUS_WAITING_FOR_DEPENDENCIES));
+        long release = getReleaseTime(index);
+        long waitend = release == NONE || ready == NONE ? ready : Math.max(ready, release);
+        return new long[]{
+            between(getTime(index, STATUS_SPAWNING), getTime(index, STATUS_INITIALIZED)),
+            between(getTime(index, STATUS_INITIALIZED), downloaded),
+            between(ready, waitend),
+            between(waitend, getTime(index, STATUS_TRIGGERED_CONTAINER_START)),
+            between(getTime(index, STATUS_TRIGGERED_CONTAINER_START), getTime(index, STATUS_STARTED))
+        };
+    }//EoM
+
+    /**
+     * Renders the per-node table followed by the critical path.
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Timeline of ").append(deploymentid).append(" (").append(graph.size()).append(" nodes, ")
+                .append(format(endTime)).append(" ms)\n");
+        sb.append(String.format("%-20s %8s %8s %8s %8s %8s %8s %8s%n", "node", "level", "init", "download", "wait", "start", "check", "end"));
+        for (int index : graph.getTopologicalOrder()) {
+            appendRow(sb, index);
+        }
+        List<Integer> path = getCriticalPath();
+        long[] totals = new long[5];
+        sb.append("Critical path:\n");
+        for (int index : path) {
+            appendRow(sb, index);
+            long[] phases = getPhases(index);
+            //after the first node only start and check run after the release
+            for (int i = index == path.get(0) ? 0 : 3; i < totals.length; i++) {
+                totals[i] += Math.max(0, phases[i]);
+            }
+        }
+        sb.append(String.format("%-20s %8s %8d %8d %8d %8d %8d%n", "total", "", totals[0], totals[1], totals[2], totals[3], totals[4]));
+        return sb.toString();
+    }//EoM
+
+    private void appendRow(StringBuilder sb, int index) {
+        long[] phases = getPhases(index);
+        String end = getFailure(index) != 0 ? format(getEnd(index)) + " (" + getFailure(index) + ")" : format(getEnd(index));
+        sb.append(String.format("%-20s %8d %8s %8s %8s %8s %8s %8s%n", graph.getName(index), graph.getLevel(index),
+                format(phases[0]), format(phases[1]), format(phases[2]), format(phases[3]), format(phases[4]), end));
+    }//EoM
+
+    public String getDeploymentid() {
+        return deploymentid;
+    }//EoM
+
+    /**
+     * @return the deployment time in milliseconds, or -1 while it runs
+     */
+    public long getEndTime() {
+        return endTime;
+    }//EoM
+
+    @Override
+    public String toString() {
+        return dump();
+    }//EoM
+
+}//EoC
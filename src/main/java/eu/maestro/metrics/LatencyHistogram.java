@@ -0,0 +1,125 @@
+package eu.maestro.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of latencies. Every power of two is split
+ * into eight buckets, so a reported percentile is within 12.5% of the
+ * recorded value over the whole long range. Recording is a handful of
+ * atomic increments on preallocated arrays and allocates nothing.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //highest set bit of a non-negative long
+    private static final int MAX_EXPONENT = Long.SIZE - 2;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }//EoCon
+
+    /**
+     * @param micros the latency in microseconds; negative values count as 0
+     */
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        buckets.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        //saturates instead of wrapping into a negative mean
+        sum.accumulateAndGet(value, (total, added) -> total > Long.MAX_VALUE - added ? Long.MAX_VALUE : total + added);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+        }
+    }//EoM
+
+    //negative values fall in the first bucket
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(0, value);
+        }
+        int exponent = Math.min(MAX_EXPONENT, 63 - Long.numberOfLeadingZeros(value));
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }//EoM
+
+    //largest value that falls in the bucket
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        if (bucket >= BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = SUB_BUCKETS + bucket % SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }//EoM
+
+    /**
+     * @param fraction between 0 and 1, e.g. 0.99
+     * @return the upper bound of the bucket holding the percentile, capped at
+     * the maximum, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double fraction) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }//EoM
+
+    public String getName() {
+        return name;
+    }//EoM
+
+    public long getCount() {
+        return count.get();
+    }//EoM
+
+    public long getMax() {
+        return max.get();
+    }//EoM
+
+    public double getMean() {
+        long total = count.get();
+        return total == 0 ? 0 : (double) sum.get() / total;
+    }//EoM
+
+    public LatencySnapshot snapshot() {
+        return new LatencySnapshot(name, getCount(), getMean(), getPercentile(0.5), getPercentile(0.9), getPercentile(0.99), getMax());
+    }//EoM
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }//EoM
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }//EoM
+
+}//EoC
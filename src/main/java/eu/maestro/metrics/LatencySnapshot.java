@@ -0,0 +1,65 @@
+package eu.maestro.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Point-in-time summary of a LatencyHistogram, in microseconds. Exposed over
+ * JMX as composite data.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class LatencySnapshot {
+
+    private final String name;
+    private final long count;
+    private final double mean;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long max;
+
+    @ConstructorProperties({"name", "count", "mean", "p50", "p90", "p99", "max"})
+    public LatencySnapshot(String name, long count, double mean, long p50, long p90, long p99, long max) {
+        this.name = name;
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.max = max;
+    }//EoCon
+
+    public String getName() {
+        return name;
+    }//EoM
+
+    public long getCount() {
+        return count;
+    }//EoM
+
+    public double getMean() {
+        return mean;
+    }//EoM
+
+    public long getP50() {
+        return p50;
+    }//EoM
+
+    public long getP90() {
+        return p90;
+    }//EoM
+
+    public long getP99() {
+        return p99;
+    }//EoM
+
+    public long getMax() {
+        return max;
+    }//EoM
+
+    @Override
+    public String toString() {
+        return String.format("%s{count=%d, mean=%.0fus, p50=%dus, p90=%dus, p99=%dus, max=%dus}", name, count, mean, p50, p90, p99, max);
+    }//EoM
+
+}//EoC
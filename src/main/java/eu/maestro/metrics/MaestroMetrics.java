@@ -0,0 +1,179 @@
+package eu.maestro.metrics;
+
+import eu.maestro.agent.Phase;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Latency histograms of the JVM: one per agent phase, one for status commits,
+ * one for dependency waits and one for whole deployments, plus the timelines
+ * of the most recent deployments. Registered with the platform MBean server
+ * on first use.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class MaestroMetrics implements MaestroMetricsMXBean {
+
+    private static final Logger logger = Logger.getLogger(MaestroMetrics.class.getName());
+
+    public static final String OBJECT_NAME = "eu.maestro:type=Metrics";
+    public static final String TIMELINES_PROPERTY = "maestro.metrics.timelines";
+    public static final int DEFAULT_TIMELINES = 16;
+
+    private static MaestroMetrics instance = null;
+
+    private final EnumMap<Phase, LatencyHistogram> phases = new EnumMap<>(Phase.class);
+    private final LatencyHistogram commit = new LatencyHistogram("commitStatus");
+    private final LatencyHistogram dependencywait = new LatencyHistogram("dependencyWait");
+    private final LatencyHistogram deployment = new LatencyHistogram("deployment");
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final Map<String, DeploymentTimeline> timelines;
+
+    private MaestroMetrics(int maxtimelines) {
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, new LatencyHistogram(phase.name().toLowerCase()));
+        }
+        timelines = new LinkedHashMap<String, DeploymentTimeline>(16, 0.75f, false) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DeploymentTimeline> eldest) {
+                return size() > maxtimelines;
+            }
+        };
+    }//EoCon
+
+    public static synchronized MaestroMetrics getInstance() {
+        if (instance == null) {
+            instance = new MaestroMetrics(Integer.getInteger(TIMELINES_PROPERTY, DEFAULT_TIMELINES));
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(OBJECT_NAME));
+            } catch (JMException ex) {
+                logger.log(Level.SEVERE, null, ex);
+            }
+        }
+        return instance;
+    }//EoM
+
+    public LatencyHistogram getPhase(Phase phase) {
+        return phases.get(phase);
+    }//EoM
+
+    public LatencyHistogram getCommitHistogram() {
+        return commit;
+    }//EoM
+
+    public LatencyHistogram getDependencyWaitHistogram() {
+        return dependencywait;
+    }//EoM
+
+    /**
+     * Records a finished deployment and keeps its timeline.
+     */
+    public void recordDeployment(DeploymentTimeline timeline, boolean success) {
+        deployment.record(timeline.getEndTime() * 1000);
+        (success ? completed : failed).incrementAndGet();
+        synchronized (timelines) {
+            timelines.put(timeline.getDeploymentid(), timeline);
+        }
+    }//EoM
+
+    @Override
+    public LatencySnapshot getInitialize() {
+        return phases.get(Phase.INITIALIZE).snapshot();
+    }//EoM
+
+    @Override
+    public LatencySnapshot getDownload() {
+        return phases.get(Phase.DOWNLOAD).snapshot();
+    }//EoM
+
+    @Override
+    public LatencySnapshot getStart() {
+        return phases.get(Phase.START).snapshot();
+    }//EoM
+
+    @Override
+    public LatencySnapshot getCheck() {
+        return phases.get(Phase.CHECK).snapshot();
+    }//EoM
+
+    @Override
+    public LatencySnapshot getCommitStatus() {
+        return commit.snapshot();
+    }//EoM
+
+    @Override
+    public LatencySnapshot getDependencyWait() {
+        return dependencywait.snapshot();
+    }//EoM
+
+    @Override
+    public LatencySnapshot getDeployment() {
+        return deployment.snapshot();
+    }//EoM
+
+    @Override
+    public long getDeploymentsCompleted() {
+        return completed.get();
+    }//EoM
+
+    @Override
+    public long getDeploymentsFailed() {
+        return failed.get();
+    }//EoM
+
+    @Override
+    public List<String> getTimelines() {
+        synchronized (timelines) {
+            return new ArrayList<>(timelines.keySet());
+        }
+    }//EoM
+
+    public DeploymentTimeline getTimeline(String deploymentid) {
+        synchronized (timelines) {
+            return timelines.get(deploymentid);
+        }
+    }//EoM
+
+    @Override
+    public String dumpTimeline(String deploymentid) {
+        DeploymentTimeline timeline = getTimeline(deploymentid);
+        return timeline == null ? null : timeline.dump();
+    }//EoM
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : phases.values()) {
+            histogram.reset();
+        }
+        commit.reset();
+        dependencywait.reset();
+        deployment.reset();
+        completed.set(0);
+        failed.set(0);
+        synchronized (timelines) {
+            timelines.clear();
+        }
+    }//EoM
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (LatencyHistogram histogram : phases.values()) {
+            sb.append(histogram).append('\n');
+        }
+        return sb.append(commit).append('\n').append(dependencywait).append('\n').append(deployment).toString();
+    }//EoM
+
+}//EoC
@@ -0,0 +1,44 @@
+package eu.maestro.metrics;
+
+import java.util.List;
+
+/**
+ * JMX view of MaestroMetrics, registered as eu.maestro:type=Metrics. All
+ * latencies are in microseconds.
+ *
+ * @author Panagiotis Gouvas
+ */
+public interface MaestroMetricsMXBean {
+
+    LatencySnapshot getInitialize();
+
+    LatencySnapshot getDownload();
+
+    LatencySnapshot getStart();
+
+    LatencySnapshot getCheck();
+
+    LatencySnapshot getCommitStatus();
+
+    LatencySnapshot getDependencyWait();
+
+    LatencySnapshot getDeployment();
+
+    long getDeploymentsCompleted();
+
+    long getDeploymentsFailed();
+
+    /**
+     * @return ids of the deployments whose timeline is still kept
+     */
+    List<String> getTimelines();
+
+    /**
+     * @return the timeline table and critical path of a recent deployment,
+     * or null if it is not kept
+     */
+    String dumpTimeline(String deploymentid);
+
+    void reset();
+
+}//EoI
@@ -0,0 +1,72 @@
+package eu.maestro.orchestrator;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates the executor that runs the agents of a deployment. The mode is
+ * selected with the maestro.agent.executor system property:
+ * <ul>
+ * <li>thread - an unbounded set of platform threads, one per running agent
+ * task (default)</li>
+ * <li>pool - a bounded pool of maestro.agent.pool.size platform threads</li>
+ * <li>virtual - one virtual thread per agent, falls back to pool on JDKs
+ * without virtual threads</li>
+ * </ul>
+ *
+ * @author Panagiotis Gouvas
+ */
+public class AgentExecutors {
+
+    private static final Logger logger = Logger.getLogger(AgentExecutors.class.getName());
+
+    public static final String EXECUTOR_PROPERTY = "maestro.agent.executor";
+    public static final String POOL_SIZE_PROPERTY = "maestro.agent.pool.size";
+
+    public static final String EXECUTOR_THREAD = "thread";
+    public static final String EXECUTOR_POOL = "pool";
+    public static final String EXECUTOR_VIRTUAL = "virtual";
+
+    public static final int DEFAULT_POOL_SIZE = 64;
+
+    public static ExecutorService create(String deploymentid) {
+        return create(System.getProperty(EXECUTOR_PROPERTY, EXECUTOR_THREAD), deploymentid);
+    }//EoM
+
+    public static ExecutorService create(String mode, String deploymentid) {
+        switch (mode) {
+            case EXECUTOR_THREAD:
+                return Executors.newCachedThreadPool(threadFactory(deploymentid));
+            case EXECUTOR_POOL:
+                return newPool(deploymentid);
+            case EXECUTOR_VIRTUAL:
+                try {
+                    return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                } catch (ReflectiveOperationException ex) {
+                    logger.log(Level.WARNING, "Virtual threads are not available on this JVM, using a bounded pool", ex);
+                    return newPool(deploymentid);
+                }
+            default:
+                throw new IllegalArgumentException("Unknown agent executor " + mode);
+        }
+    }//EoM
+
+    private static ExecutorService newPool(String deploymentid) {
+        return Executors.newFixedThreadPool(Integer.getInteger(POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE), threadFactory(deploymentid));
+    }//EoM
+
+    private static ThreadFactory threadFactory(String deploymentid) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName(deploymentid + "_agent-" + counter.incrementAndGet());
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        };
+    }//EoM
+
+}//EoC
@@ -0,0 +1,161 @@
+package eu.maestro.orchestrator;
+
+import eu.maestro.journal.JournaledDeployment;
+import eu.maestro.util.DeploymentGraph;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A deployment submitted to the OrchestrationEngine: queued until admitted,
+ * then run by its own Orchestrator on the shared resources of the engine.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class Deployment {
+
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    }//EoE
+
+    private final OrchestrationEngine engine;
+    private final DeploymentGraph graph;
+    private final String deploymentid;
+    private final CompletableFuture<Boolean> completion = new CompletableFuture<>();
+    //set when the deployment is resumed from the journal
+    private final JournaledDeployment recovered;
+    //orchestrator of the ended revision this deployment rolls forward, until admitted
+    private Orchestrator previous;
+    private State state = State.QUEUED;
+    private Orchestrator orchestrator;
+    //made while queued, attached to the orchestrator on admission
+    private List<StatusSubscription> subscriptions = new ArrayList<>();
+    private final long submitTime;
+    private long admitTime;
+
+    Deployment(OrchestrationEngine engine, DeploymentGraph graph, String deploymentid, JournaledDeployment recovered, Orchestrator previous) {
+        this.engine = engine;
+        this.graph = graph;
+        this.deploymentid = deploymentid;
+        this.recovered = recovered;
+        this.previous = previous;
+        this.submitTime = System.currentTimeMillis();
+    }//EoCon
+
+    synchronized void admit(Orchestrator orchestrator) {
+        this.orchestrator = orchestrator;
+        this.admitTime = System.currentTimeMillis();
+        state = State.RUNNING;
+    }//EoM
+
+    /**
+     * @return false if the deployment had already finished
+     */
+    synchronized boolean finish(State finalstate) {
+        if (state != State.QUEUED && state != State.RUNNING) {
+            return false;
+        }
+        state = finalstate;
+        return true;
+    }//EoM
+
+    /**
+     * Removes a queued deployment, or cancels the agents of a running one.
+     * Either way the completion ends with false.
+     */
+    public void cancel() {
+        engine.cancel(this);
+    }//EoM
+
+    /**
+     * Pushes the status events of the deployment to the listener, with
+     * Orchestrator.DEFAULT_SUBSCRIPTION_CAPACITY.
+     */
+    public StatusSubscription subscribe(StatusListener listener) {
+        return subscribe(listener, Orchestrator.DEFAULT_SUBSCRIPTION_CAPACITY);
+    }//EoM
+
+    /**
+     * Pushes the status events of the deployment to the listener, from its
+     * admission on, see Orchestrator.subscribe(). A deployment cancelled
+     * before its admission only publishes CANCELLED, on the thread that
+     * cancels it or subscribes.
+     */
+    public StatusSubscription subscribe(StatusListener listener, int capacity) {
+        StatusSubscription subscription = new StatusSubscription(listener, capacity);
+        Orchestrator current;
+        synchronized (this) {
+            current = orchestrator;
+            if (current == null && state == State.QUEUED) {
+                subscriptions.add(subscription);
+                return subscription;
+            }
+        }
+        if (current != null) {
+            current.attach(subscription);
+        } else {
+            close(subscription);
+        }
+        return subscription;
+    }//EoM
+
+    synchronized List<StatusSubscription> takeSubscriptions() {
+        List<StatusSubscription> taken = subscriptions;
+        subscriptions = new ArrayList<>();
+        return taken;
+    }//EoM
+
+    //for a deployment that never got an orchestrator
+    void close(StatusSubscription subscription) {
+        subscription.offer(StatusEvent.deployment(deploymentid, getState(), System.currentTimeMillis()));
+        subscription.complete();
+        subscription.start(Runnable::run);
+    }//EoM
+
+    /**
+     * @return completes with true if every node started, false if the
+     * deployment failed, timed out or was cancelled
+     */
+    public CompletableFuture<Boolean> getCompletion() {
+        return completion;
+    }//EoM
+
+    public String getDeploymentid() {
+        return deploymentid;
+    }//EoM
+
+    public DeploymentGraph getGraph() {
+        return graph;
+    }//EoM
+
+    public synchronized State getState() {
+        return state;
+    }//EoM
+
+    JournaledDeployment getRecovered() {
+        return recovered;
+    }//EoM
+
+    synchronized Orchestrator takePrevious() {
+        Orchestrator taken = previous;
+        previous = null;
+        return taken;
+    }//EoM
+
+    synchronized Orchestrator getOrchestrator() {
+        return orchestrator;
+    }//EoM
+
+    /**
+     * @return milliseconds spent in the admission queue so far
+     */
+    public synchronized long getQueueMillis() {
+        return (state == State.QUEUED ? System.currentTimeMillis() : admitTime) - submitTime;
+    }//EoM
+
+    @Override
+    public synchronized String toString() {
+        return deploymentid + "[" + state + (orchestrator != null && state == State.RUNNING ? " " + orchestrator.getSummary() : "") + "]";
+    }//EoM
+
+}//EoC
@@ -0,0 +1,104 @@
+package eu.maestro.orchestrator;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shares a bounded number of workers of an executor between lanes, one lane
+ * per deployment. Workers take one task at a time from the lanes in round
+ * robin order, so a deployment with thousands of ready agents cannot starve
+ * a small one, while tasks of the same lane still run in parallel.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class FairExecutor {
+
+    private static final Logger logger = Logger.getLogger(FairExecutor.class.getName());
+
+    private final Executor executor;
+    private final int workers;
+    private final Queue<Lane> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * @param executor runs the workers
+     * @param workers the most tasks running at once across all lanes
+     */
+    public FairExecutor(Executor executor, int workers) {
+        this.executor = executor;
+        this.workers = workers;
+    }//EoCon
+
+    public Lane newLane() {
+        return new Lane();
+    }//EoM
+
+    private void signal() {
+        int running;
+        while ((running = active.get()) < workers) {
+            if (active.compareAndSet(running, running + 1)) {
+                executor.execute(this::work);
+                return;
+            }
+        }
+    }//EoM
+
+    private void work() {
+        Lane lane;
+        while ((lane = ready.poll()) != null) {
+            Runnable task = lane.tasks.poll();
+            //back to the tail of the ready lanes before running the task
+            lane.queued.set(false);
+            if (!lane.tasks.isEmpty() && lane.queued.compareAndSet(false, true)) {
+                ready.add(lane);
+                signal();
+            }
+            if (task != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    logger.log(Level.SEVERE, null, ex);
+                }
+            }
+        }
+        active.decrementAndGet();
+        //a lane may have become ready after the last poll
+        if (!ready.isEmpty()) {
+            signal();
+        }
+    }//EoM
+
+    public int getActiveWorkers() {
+        return active.get();
+    }//EoM
+
+    /**
+     * Tasks submitted to one deployment, run in submission order as workers
+     * reach the lane.
+     */
+    public class Lane implements Executor {
+
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean queued = new AtomicBoolean(false);
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+            if (queued.compareAndSet(false, true)) {
+                ready.add(this);
+            }
+            signal();
+        }
+
+        public int getPending() {
+            return tasks.size();
+        }
+
+    }//EoC
+
+}//EoC
@@ -0,0 +1,351 @@
+package eu.maestro.orchestrator;
+
+import eu.maestro.agent.AgentPhases;
+import eu.maestro.agent.DownloadScheduler;
+import static eu.maestro.orchestrator.Orchestrator.ORCHESTRATOR_SLEEP_CYCLE_MILLISECONDS;
+import eu.maestro.journal.JournaledDeployment;
+import eu.maestro.journal.StatusJournal;
+import eu.maestro.orchestrator.Deployment.State;
+import eu.maestro.store.StatusStore;
+import eu.maestro.time.Cancellable;
+import eu.maestro.time.Scheduler;
+import eu.maestro.time.SystemScheduler;
+import eu.maestro.util.DeploymentGraph;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * Runs many deployments at once on shared resources: one status store, one
+ * agent executor and one timer thread for the whole JVM, instead of a cache
+ * manager, a thread and a report loop per deployment.
+ *
+ * Submissions go through admission control. A deployment is admitted while
+ * fewer than maxdeployments run and the nodes in flight stay within maxnodes;
+ * otherwise it waits, first come first served, in a queue of at most
+ * maxqueued entries, and submissions beyond that are rejected. Admitted
+ * deployments share the workers of a FairExecutor round robin, one lane each.
+ *
+ * The default admission limit is DEPLOYMENTS_PER_CORE concurrent deployments
+ * per available core. With emulated phases an agent holds a worker only
+ * while it downloads, so the limit is bounded by store and event traffic,
+ * not by threads.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class OrchestrationEngine {
+
+    private static final Logger logger = Logger.getLogger(OrchestrationEngine.class.getName());
+
+    public static final String MAX_DEPLOYMENTS_PROPERTY = "maestro.engine.max.deployments";
+    public static final String MAX_NODES_PROPERTY = "maestro.engine.max.nodes";
+    public static final String MAX_QUEUED_PROPERTY = "maestro.engine.max.queued";
+    public static final String WORKERS_PROPERTY = "maestro.engine.workers";
+
+    public static final int DEPLOYMENTS_PER_CORE = 16;
+    public static final int DEFAULT_MAX_NODES = 100000;
+    public static final int DEFAULT_MAX_QUEUED = 1024;
+    public static final int DEFAULT_WORKERS = 64;
+
+    private final StatusStore store;
+    private final ExecutorService executor;
+    private final FairExecutor fair;
+    private final Scheduler scheduler;
+    private final AgentPhases phases;
+    private final int maxdeployments;
+    private final int maxnodes;
+    private final int maxqueued;
+
+    //queued and running deployments by id
+    private final Map<String, Deployment> deployments = new HashMap<>();
+    private final ArrayDeque<Deployment> queue = new ArrayDeque<>();
+    private int running = 0;
+    private int nodes = 0;
+    //deployments whose agents have not all terminated yet
+    private int lingering = 0;
+    private long completed = 0;
+    private long failed = 0;
+    private long cancelled = 0;
+    private boolean shutdown = false;
+    private boolean terminated = false;
+    private Cancellable reporter;
+    private final CompletableFuture<Void> termination = new CompletableFuture<>();
+
+    /**
+     * Engine with emulated phases, downloads ordered by the shared
+     * DownloadScheduler, and the limits of the maestro.engine.* system
+     * properties.
+     */
+    public OrchestrationEngine() throws IOException {
+        this(Integer.getInteger(MAX_DEPLOYMENTS_PROPERTY, DEPLOYMENTS_PER_CORE * Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger(MAX_NODES_PROPERTY, DEFAULT_MAX_NODES),
+                Integer.getInteger(MAX_QUEUED_PROPERTY, DEFAULT_MAX_QUEUED),
+                Integer.getInteger(WORKERS_PROPERTY, DEFAULT_WORKERS),
+                DownloadScheduler.getShared());
+    }//EoCon
+
+    /**
+     * @param maxdeployments deployments running at once
+     * @param maxnodes nodes of the running deployments; a larger deployment
+     * is still admitted once nothing else runs
+     * @param maxqueued deployments waiting for admission
+     * @param workers agent tasks running at once across all deployments
+     * @param phases the work done by the agents in each phase
+     */
+    public OrchestrationEngine(int maxdeployments, int maxnodes, int maxqueued, int workers, AgentPhases phases) throws IOException {
+        this.maxdeployments = maxdeployments;
+        this.maxnodes = maxnodes;
+        this.maxqueued = maxqueued;
+        this.phases = phases;
+        //held for the life of the engine, so the store is not restarted between deployments
+        this.store = StatusStore.acquire();
+        this.executor = AgentExecutors.create("engine");
+        this.fair = new FairExecutor(executor, workers);
+        this.scheduler = new SystemScheduler(executor);
+        this.reporter = scheduler.schedule(this::report, ORCHESTRATOR_SLEEP_CYCLE_MILLISECONDS);
+        logger.info("Starting orchestration engine for " + maxdeployments + " deployments and " + maxnodes + " nodes on " + workers + " workers");
+    }//EoCon
+
+    /**
+     * Queues a deployment and admits it as soon as the limits allow.
+     *
+     * @throws IllegalArgumentException if a deployment with the same id is
+     * queued or running
+     * @throws RejectedExecutionException if the engine is shut down or the
+     * admission queue is full
+     */
+    public Deployment submit(DeploymentGraph graph, String deploymentid) {
+        return submit(graph, deploymentid, null, null);
+    }//EoM
+
+    /**
+     * Queues the next revision of an ended deployment. Once admitted, only
+     * the nodes that changed and the nodes depending on them are restarted,
+     * see Orchestrator.redeploy().
+     *
+     * @throws IllegalStateException if previous has not ended yet
+     * @throws IllegalArgumentException if another revision of the deployment
+     * is queued or running
+     * @throws RejectedExecutionException if the engine is shut down or the
+     * admission queue is full
+     */
+    public Deployment redeploy(Deployment previous, DeploymentGraph next) {
+        if (!previous.getCompletion().isDone()) {
+            throw new IllegalStateException("Deployment " + previous.getDeploymentid() + " has not ended");
+        }
+        //null if previous was cancelled while queued, the revision then starts from scratch
+        return submit(next, previous.getDeploymentid(), null, previous.getOrchestrator());
+    }//EoM
+
+    /**
+     * Resubmits the deployments left unfinished in the journal of
+     * maestro.journal.dir, each reattaching to its nodes where they were.
+     *
+     * @return the resubmitted deployments, none if journaling is off
+     */
+    public List<Deployment> recover() throws IOException {
+        List<Deployment> resumed = new ArrayList<>();
+        StatusJournal journal = StatusJournal.getShared();
+        if (journal != null) {
+            for (JournaledDeployment recovered : journal.getRecovered()) {
+                resumed.add(submit(recovered.getGraph(), recovered.getDeploymentid(), recovered, null));
+            }
+        }
+        return resumed;
+    }//EoM
+
+    private Deployment submit(DeploymentGraph graph, String deploymentid, JournaledDeployment recovered, Orchestrator previous) {
+        Deployment deployment;
+        synchronized (this) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Orchestration engine is shut down");
+            }
+            if (deployments.containsKey(deploymentid)) {
+                throw new IllegalArgumentException("Deployment " + deploymentid + " is already submitted");
+            }
+            if (queue.size() >= maxqueued) {
+                throw new RejectedExecutionException("Admission queue is full, " + queue.size() + " deployments are waiting");
+            }
+            deployment = new Deployment(this, graph, deploymentid, recovered, previous);
+            deployments.put(deploymentid, deployment);
+            queue.add(deployment);
+        }
+        admit();
+        return deployment;
+    }//EoM
+
+    private boolean canAdmit(int size) {
+        return running < maxdeployments && (running == 0 || nodes + size <= maxnodes);
+    }//EoM
+
+    private void admit() {
+        List<Deployment> admitted = new ArrayList<>();
+        synchronized (this) {
+            Deployment next;
+            while ((next = queue.peek()) != null && canAdmit(next.getGraph().size())) {
+                queue.poll();
+                running++;
+                lingering++;
+                nodes += next.getGraph().size();
+                Orchestrator orchestrator = new Orchestrator(next.getGraph(), next.getDeploymentid(), new SystemScheduler(fair.newLane()), phases);
+                orchestrator.setReporting(false);
+                next.admit(orchestrator);
+                admitted.add(next);
+            }
+        }
+        for (Deployment deployment : admitted) {
+            Orchestrator orchestrator = deployment.getOrchestrator();
+            Orchestrator previous = deployment.takePrevious();
+            for (StatusSubscription subscription : deployment.takeSubscriptions()) {
+                orchestrator.attach(subscription);
+            }
+            CompletableFuture<Boolean> completion = deployment.getRecovered() != null ? orchestrator.resume(deployment.getRecovered())
+                    : previous != null ? orchestrator.redeploy(previous) : orchestrator.start();
+            completion.whenComplete((success, error) -> finished(deployment, Boolean.TRUE.equals(success)));
+            orchestrator.getAgentTermination().whenComplete((ignored, error) -> released());
+        }
+    }//EoM
+
+    private void finished(Deployment deployment, boolean success) {
+        boolean counted = deployment.finish(success ? State.COMPLETED : State.FAILED);
+        synchronized (this) {
+            deployments.remove(deployment.getDeploymentid());
+            running--;
+            nodes -= deployment.getGraph().size();
+            if (counted) {
+                if (success) {
+                    completed++;
+                } else {
+                    failed++;
+                }
+            }
+        }
+        deployment.getCompletion().complete(success);
+        admit();
+    }//EoM
+
+    private void released() {
+        synchronized (this) {
+            lingering--;
+        }
+        checkTerminated();
+    }//EoM
+
+    void cancel(Deployment deployment) {
+        Orchestrator orchestrator;
+        synchronized (this) {
+            if (queue.remove(deployment)) {
+                deployments.remove(deployment.getDeploymentid());
+                deployment.finish(State.CANCELLED);
+                cancelled++;
+                orchestrator = null;
+            } else {
+                orchestrator = deployment.getOrchestrator();
+                if (orchestrator == null || !deployment.finish(State.CANCELLED)) {
+                    return;
+                }
+                cancelled++;
+            }
+        }
+        if (orchestrator == null) {
+            for (StatusSubscription subscription : deployment.takeSubscriptions()) {
+                deployment.close(subscription);
+            }
+            deployment.getCompletion().complete(false);
+            checkTerminated();
+        } else {
+            orchestrator.cancel();
+        }
+    }//EoM
+
+    /**
+     * Stops admitting new submissions. Queued and running deployments are
+     * finished, then the store and the executor are released.
+     *
+     * @return completes once the engine has released its resources
+     */
+    public CompletableFuture<Void> shutdown() {
+        synchronized (this) {
+            shutdown = true;
+        }
+        checkTerminated();
+        return termination;
+    }//EoM
+
+    /**
+     * Like shutdown(), cancelling the queued and running deployments first.
+     */
+    public CompletableFuture<Void> shutdownNow() {
+        List<Deployment> active;
+        synchronized (this) {
+            shutdown = true;
+            active = new ArrayList<>(deployments.values());
+        }
+        for (Deployment deployment : active) {
+            deployment.cancel();
+        }
+        return shutdown();
+    }//EoM
+
+    private void checkTerminated() {
+        synchronized (this) {
+            if (!shutdown || !deployments.isEmpty() || lingering > 0 || terminated) {
+                return;
+            }
+            terminated = true;
+            reporter.cancel();
+        }
+        logger.info("Stopping orchestration engine: " + completed + " completed, " + failed + " failed, " + cancelled + " cancelled");
+        executor.shutdown();
+        store.release();
+        termination.complete(null);
+    }//EoM
+
+    //one control loop for all deployments
+    private void report() {
+        List<Deployment> active;
+        synchronized (this) {
+            if (terminated) {
+                return;
+            }
+            reporter = scheduler.schedule(this::report, ORCHESTRATOR_SLEEP_CYCLE_MILLISECONDS);
+            if (deployments.isEmpty()) {
+                return;
+            }
+            active = new ArrayList<>(deployments.values());
+        }
+        logger.info("Engine: running=" + getRunning() + ", queued=" + getQueued() + ", workers=" + fair.getActiveWorkers() + " " + active);
+    }//EoM
+
+    public synchronized Deployment getDeployment(String deploymentid) {
+        return deployments.get(deploymentid);
+    }//EoM
+
+    public synchronized int getRunning() {
+        return running;
+    }//EoM
+
+    public synchronized int getQueued() {
+        return queue.size();
+    }//EoM
+
+    public synchronized long getCompleted() {
+        return completed;
+    }//EoM
+
+    public synchronized long getFailed() {
+        return failed;
+    }//EoM
+
+    public synchronized long getCancelled() {
+        return cancelled;
+    }//EoM
+
+}//EoC
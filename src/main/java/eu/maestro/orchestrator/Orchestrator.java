@@ -1,17 +1,33 @@
 package eu.maestro.orchestrator;
 
 import eu.maestro.agent.Agent;
+import eu.maestro.agent.AgentPhases;
+import eu.maestro.agent.DownloadScheduler;
 import static eu.maestro.agent.Agent.STATUS_SPAWNING;
+import eu.maestro.journal.JournaledDeployment;
+import eu.maestro.journal.StatusJournal;
+import eu.maestro.metrics.DeploymentTimeline;
+import eu.maestro.metrics.MaestroMetrics;
+import eu.maestro.store.StatusKey;
+import eu.maestro.store.StatusStore;
+import eu.maestro.store.StatusWatcher;
+import eu.maestro.time.Cancellable;
+import eu.maestro.time.Scheduler;
+import eu.maestro.time.SystemScheduler;
+import eu.maestro.util.DeploymentGraph;
+import eu.maestro.util.GraphDiff;
 import eu.maestro.util.Node;
-import eu.maestro.util.TreeUtil;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.infinispan.Cache;
-import org.infinispan.manager.DefaultCacheManager;
 
 /**
  *
@@ -20,92 +36,506 @@ import org.infinispan.manager.DefaultCacheManager;
 public class Orchestrator implements Runnable {
     
     private static final Logger logger = Logger.getLogger(Orchestrator.class.getName());
-    private Node<String> tree;
+    private DeploymentGraph graph;
     private String deploymentid;
-    DefaultCacheManager cachemngr;    
-    Cache<String, String> cache;
+    StatusStore store;    
+    Cache<StatusKey, Integer> cache;
+    private final Scheduler scheduler;
+    private final AgentPhases phases;
+    //executor created for this deployment, shut down once all agents have terminated
+    private final ExecutorService executor;
 
     //Global Strings
     public static final int ORCHESTRATOR_SLEEP_CYCLE_MILLISECONDS = 1000;    
     public static final int MAX_TIMEOUT_FOR_DEPLOYMENT_MILLISECONDS = 60000;
+    //logs the timeline of every deployment when set to true
+    public static final String TIMELINE_PROPERTY = "maestro.timeline.log";
+    //events buffered for a subscriber before they are coalesced
+    public static final int DEFAULT_SUBSCRIPTION_CAPACITY = 1024;
+    //the orchestrator dispatches the starts when set to true, see StartDispatcher
+    public static final String PUSH_SCHEDULING_PROPERTY = "maestro.scheduling.push";
 
     //current state
     private boolean terminated = false;
+    private boolean cancelled = false;
+    //the engine reports all of its deployments in one loop
+    private boolean reporting = true;
+    private boolean pushscheduling = Boolean.getBoolean(PUSH_SCHEDULING_PROPERTY);
+    private StartDispatcher dispatcher;
+    private Agent[] agents;
+    private long startTime = 0;
+    private StatusAggregator aggregator;
+    private DeploymentTimeline timeline;
+    private Cancellable reporter;
+    private Cancellable deadline;
+    private final CompletableFuture<Boolean> completion = new CompletableFuture<>();
+    private final CompletableFuture<Void> agentstermination = new CompletableFuture<>();
+    //transitions of the deployment are journaled under journalnumber
+    private StatusJournal journal;
+    private int journalnumber;
+    private StatusWatcher journalwatcher;
+    private final StatusPublisher publisher;
     
     public Orchestrator(Node<String> tree, String deploymentid) {
-        this.tree = tree;
+        this(DeploymentGraph.compile(tree), deploymentid);
+    }//EoCon
+
+    /**
+     * Runs the agents in real time on the executor selected by AgentExecutors,
+     * with the emulated phases and the downloads ordered by the shared
+     * DownloadScheduler.
+     */
+    public Orchestrator(DeploymentGraph graph, String deploymentid) {
+        this(graph, deploymentid, AgentExecutors.create(deploymentid));
+    }//EoCon
+
+    private Orchestrator(DeploymentGraph graph, String deploymentid, ExecutorService executor) {
+        this(graph, deploymentid, new SystemScheduler(executor), DownloadScheduler.getShared(), executor);
+    }//EoCon
+
+    /**
+     * @param scheduler clock and executor of the orchestrator and its agents
+     * @param phases the work done by the agents in each phase
+     */
+    public Orchestrator(DeploymentGraph graph, String deploymentid, Scheduler scheduler, AgentPhases phases) {
+        this(graph, deploymentid, scheduler, phases, null);
+    }//EoCon
+
+    private Orchestrator(DeploymentGraph graph, String deploymentid, Scheduler scheduler, AgentPhases phases, ExecutorService executor) {
+        this.graph = graph;
         this.deploymentid = deploymentid;
+        this.scheduler = scheduler;
+        this.phases = phases;
+        this.executor = executor;
+        this.publisher = new StatusPublisher(graph, deploymentid, scheduler);
 
         try {
-            cachemngr = new DefaultCacheManager("infinispan.xml"); 
-            cache = cachemngr.getCache();
+            store = StatusStore.acquire();
+            cache = store.getCache();
+            journal = StatusJournal.getShared();
         } catch (IOException ex) {
             logger.log(Level.SEVERE, null, ex);
         }
     }//EoCon
 
+    /**
+     * Runs the deployment on the calling thread until it completes, fails or
+     * times out.
+     */
     @Override
     public void run() {
-        logger.info("Starting Orchestrator Thread for " + deploymentid);
-        //boot all VMS
-        List<String> nodes = TreeUtil.listifyTree(tree);
-        for (String nodename : nodes) {
-            Agent agent = new Agent(tree, deploymentid, nodename);
-            Thread thread = new Thread(agent);
-            thread.setName(""+deploymentid+"_"+nodename);
-            thread.setPriority(Thread.MIN_PRIORITY);
-            thread.start();
-            //white to key-value
-            String statuslabel = deploymentid + "_" + nodename + "_status";
-            cache.put(statuslabel, "" + STATUS_SPAWNING);
-        }//for
+        try {
+            start().get();
+        } catch (InterruptedException ex) {
+            logger.log(Level.SEVERE, null, ex);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            logger.log(Level.SEVERE, null, ex);
+        }
+    }//EoM
 
-        //start timer
-        long startTime = System.currentTimeMillis();
-
-        //initiate control loop
-        while (!terminated) {
-            Map<String, String> statusmap = new HashMap<>();
-            for (String nodename : nodes) {
-                String statuslabel = deploymentid + "_" + nodename + "_status";
-                String status = cache.get(statuslabel);
-                statusmap.put(nodename, status);
-            }//for
-
-            logger.info("Status of Nodes: "+statusmap.toString());
-            
-            terminated = areAllCompleted(statusmap);
-            
-            terminated = hasTimeoutExceeded(startTime);
-
-            //enter sleep mode
+    /**
+     * Boots all agents and returns without waiting for them.
+     *
+     * @return completes with true if every node started, or with false once a
+     * node failed or the deployment timed out
+     */
+    public CompletableFuture<Boolean> start() {
+        return launch(null, null);
+    }//EoM
+
+    /**
+     * Reattaches to a deployment replayed from the journal after a crash.
+     * Statuses missing from the store are restored from the journal; nodes
+     * that already started or failed are kept as they are, and the other
+     * nodes get agents that continue from their last status.
+     *
+     * @throws IllegalArgumentException if the journaled deployment is not
+     * the deployment of this orchestrator
+     */
+    public CompletableFuture<Boolean> resume(JournaledDeployment recovered) {
+        if (!recovered.getDeploymentid().equals(deploymentid) || recovered.getGraph().size() != graph.size()) {
+            throw new IllegalArgumentException("Journaled deployment " + recovered.getDeploymentid() + " does not match " + deploymentid);
+        }
+        return launch(recovered, null);
+    }//EoM
+
+    /**
+     * Rolls an ended revision of this deployment forward to the graph of this
+     * orchestrator. The nodes that GraphDiff reports as changed, their
+     * dependents and the nodes that had not started are restarted in
+     * dependency order; all other nodes keep running and count as started.
+     * Agents of removed or replaced nodes that are still running are
+     * cancelled, and the new revision is launched once they have all
+     * terminated, so that no late commit of theirs lands on a reused key.
+     *
+     * @throws IllegalArgumentException if previous is another deployment
+     * @throws IllegalStateException if previous has not ended
+     */
+    public CompletableFuture<Boolean> redeploy(Orchestrator previous) {
+        if (!previous.deploymentid.equals(deploymentid)) {
+            throw new IllegalArgumentException("Deployment " + previous.deploymentid + " is not a revision of " + deploymentid);
+        }
+        synchronized (previous) {
+            if (!previous.terminated) {
+                throw new IllegalStateException("Deployment " + deploymentid + " is still running");
+            }
+        }
+        return fence(previous).thenComposeAsync(ignored -> launch(null, previous), scheduler);
+    }//EoM
+
+    /**
+     * Cancels the agents of previous whose nodes this revision does not keep
+     * as started, see carryOver().
+     *
+     * @return completes once all of them have terminated
+     */
+    private CompletableFuture<Void> fence(Orchestrator previous) {
+        GraphDiff diff = GraphDiff.compare(previous.graph, graph);
+        int previoussize = previous.graph.size();
+        Map<StatusKey, Integer> stored = store.getAll(StatusStore.keys(deploymentid, previoussize));
+        Agent[] running;
+        synchronized (previous) {
+            running = previous.agents == null ? new Agent[previoussize] : previous.agents;
+        }
+        boolean[] retained = new boolean[previoussize];
+        for (int index = 0; index < graph.size(); index++) {
+            int match = diff.getPreviousIndex(index);
+            if (!diff.isRestarted(index) && Integer.valueOf(Agent.STATUS_STARTED).equals(stored.get(new StatusKey(deploymentid, match)))) {
+                retained[match] = true;
+            }
+        }
+        List<CompletableFuture<Integer>> terminations = new ArrayList<>();
+        for (int index = 0; index < previoussize; index++) {
+            if (!retained[index] && running[index] != null) {
+                running[index].cancel();
+                terminations.add(running[index].getTermination());
+            }
+        }
+        return CompletableFuture.allOf(terminations.toArray(new CompletableFuture<?>[0]));
+    }//EoM
+
+    private CompletableFuture<Boolean> launch(JournaledDeployment recovered, Orchestrator previous) {
+        logger.info((recovered != null ? "Resuming" : previous != null ? "Redeploying" : "Starting") + " Orchestrator Thread for " + deploymentid + " with " + graph);
+        int size = graph.size();
+        StatusKey[] keys = StatusStore.keys(deploymentid, size);
+        Agent[] spawned = new Agent[size];
+        int[] resume = recovered != null ? reconcile(recovered, keys) : previous != null ? carryOver(previous, keys, spawned) : new int[size];
+        if (journal != null) {
             try {
-                if (!terminated) {
-                    Thread.currentThread().sleep(ORCHESTRATOR_SLEEP_CYCLE_MILLISECONDS);
+                if (recovered == null) {
+                    journalnumber = journal.begin(deploymentid, graph);
+                    for (int index = 0; index < size; index++) {
+                        if (resume[index] != StatusStore.STATUS_UNKNOWN) {
+                            journal.transition(journalnumber, index, resume[index], scheduler.currentTimeMillis());
+                        }
+                    }
+                } else {
+                    journal.resume(recovered);
+                    journalnumber = recovered.getNumber();
                 }
-            } catch (InterruptedException ex) {
+                journalwatcher = (key, status) -> journal.transition(journalnumber, key.getIndex(), status, scheduler.currentTimeMillis());
+                store.watchDeployment(deploymentid, journalwatcher);
+            } catch (IOException ex) {
                 logger.log(Level.SEVERE, null, ex);
+                journal = null;
+            }
+        }
+        store.watchDeployment(deploymentid, publisher);
+        publisher.publish(Deployment.State.RUNNING);
+        aggregator = new StatusAggregator(deploymentid, size, () -> scheduler.execute(this::terminate));
+
+        //start timer
+        startTime = scheduler.currentTimeMillis();
+        timeline = new DeploymentTimeline(graph, deploymentid, scheduler);
+        store.watchDeployment(deploymentid, timeline);
+        deadline = scheduler.schedule(this::terminate, MAX_TIMEOUT_FOR_DEPLOYMENT_MILLISECONDS);
+        if (reporting) {
+            reporter = scheduler.schedule(this::report, ORCHESTRATOR_SLEEP_CYCLE_MILLISECONDS);
+        }
+        store.watchDeployment(deploymentid, aggregator);
+        if (pushscheduling) {
+            dispatcher = new StartDispatcher(graph, deploymentid);
+            store.watchDeployment(deploymentid, dispatcher);
+        }
+
+        //boot all VMS, dependencies first
+        CompletableFuture<?>[] terminations = new CompletableFuture<?>[size];
+        boolean[] running = new boolean[size];
+        Map<StatusKey, Integer> spawning = new HashMap<>();
+        for (int index : graph.getTopologicalOrder()) {
+            if (isSettled(resume[index])) {
+                //started or failed before the crash, or kept from the previous revision
+                terminations[index] = spawned[index] == null ? CompletableFuture.completedFuture(resume[index]) : spawned[index].getTermination();
+                running[index] = spawned[index] != null;
+                continue;
+            }
+            if (resume[index] == StatusStore.STATUS_UNKNOWN) {
+                spawning.put(keys[index], STATUS_SPAWNING);
             }
-        }//terminated
-        
+            spawned[index] = new Agent(graph, deploymentid, index, scheduler, phases, resume[index]);
+            spawned[index].setPushScheduled(pushscheduling);
+            terminations[index] = spawned[index].getTermination();
+        }//for
+        //write to key-value, all nodes in one batch
+        store.putAll(spawning);
+        synchronized (this) {
+            agents = spawned;
+        }
+        if (dispatcher != null) {
+            dispatcher.attach(spawned);
+        }
+        for (int index : graph.getTopologicalOrder()) {
+            if (spawned[index] != null && !running[index]) {
+                scheduler.execute(spawned[index]);
+            }
+        }//for
+        CompletableFuture.allOf(terminations).whenComplete((ignored, error) -> agentstermination.complete(null));
+        if (executor != null) {
+            agentstermination.thenRun(executor::shutdown);
+        }
+
+        //catch up with transitions that happened before the listener was attached
+        for (Map.Entry<StatusKey, Integer> entry : store.getAll(keys).entrySet()) {
+            publisher.onStatus(entry.getKey(), entry.getValue());
+            aggregator.update(entry.getKey(), entry.getValue());
+            if (dispatcher != null) {
+                dispatcher.update(entry.getKey(), entry.getValue());
+            }
+        }
+        return completion;
+    }//EoM
+
+    /**
+     * @return per node, the later of the journaled status and the status in
+     * the store, which is brought up to date with the journal
+     */
+    private int[] reconcile(JournaledDeployment recovered, StatusKey[] keys) {
+        Map<StatusKey, Integer> stored = store.getAll(keys);
+        int[] statuses = new int[keys.length];
+        for (int index = 0; index < keys.length; index++) {
+            Integer current = stored.get(keys[index]);
+            int journaled = recovered.getStatus(index);
+            statuses[index] = current == null ? StatusStore.STATUS_UNKNOWN : current;
+            if (StatusStore.isForward(statuses[index], journaled) && journaled != StatusStore.STATUS_UNKNOWN) {
+                statuses[index] = store.advance(keys[index], journaled).join();
+            }
+        }
+        return statuses;
+    }//EoM
+
+    /**
+     * Carries the started nodes that GraphDiff keeps over from previous,
+     * moving their statuses to their new indexes, and hands their agents to
+     * this revision. Agents of the other nodes have been cancelled by fence()
+     * and the keys beyond the new graph are removed.
+     *
+     * @return per node, STATUS_STARTED if it is kept, otherwise unknown
+     */
+    private int[] carryOver(Orchestrator previous, StatusKey[] keys, Agent[] kept) {
+        GraphDiff diff = GraphDiff.compare(previous.graph, graph);
+        int previoussize = previous.graph.size();
+        Map<StatusKey, Integer> stored = store.getAll(StatusStore.keys(deploymentid, previoussize));
+        Agent[] running;
+        synchronized (previous) {
+            running = previous.agents == null ? new Agent[previoussize] : previous.agents;
+        }
+        int[] statuses = new int[keys.length];
+        int carried = 0;
+        for (int index = 0; index < keys.length; index++) {
+            int match = diff.getPreviousIndex(index);
+            if (diff.isRestarted(index) || !Integer.valueOf(Agent.STATUS_STARTED).equals(stored.get(new StatusKey(deploymentid, match)))) {
+                continue;
+            }
+            statuses[index] = Agent.STATUS_STARTED;
+            kept[index] = running[match];
+            carried++;
+            if (match != index) {
+                store.put(keys[index], Agent.STATUS_STARTED);
+            }
+        }
+        for (int index = keys.length; index < previoussize; index++) {
+            store.remove(new StatusKey(deploymentid, index));
+        }
+        logger.info("Redeploying " + deploymentid + ": " + diff + ", " + (keys.length - carried) + " nodes to start");
+        return statuses;
+    }//EoM
+
+    private static boolean isSettled(int status) {
+        return status == Agent.STATUS_STARTED || status < 0;
+    }//EoM
+
+    //control loop: logs the counters once per cycle while the deployment runs
+    private void report() {
+        synchronized (this) {
+            if (terminated) {
+                return;
+            }
+            reporter = scheduler.schedule(this::report, ORCHESTRATOR_SLEEP_CYCLE_MILLISECONDS);
+        }
+        logger.info("Status of Nodes: " + aggregator.toString());
+    }//EoM
+
+    /**
+     * Ends the deployment once it has settled or its deadline has passed, and
+     * stops its agents: the parked ones release their resources at once, the
+     * ones still running as soon as their node has started or failed. With a
+     * journal the end is reported once it is on disk.
+     */
+    private void terminate() {
+        Agent[] running;
+        synchronized (this) {
+            if (terminated) {
+                return;
+            }
+            terminated = true;
+            if (reporter != null) {
+                reporter.cancel();
+            }
+            deadline.cancel();
+            running = agents;
+        }
+        store.unwatchDeployment(deploymentid, aggregator);
+        store.unwatchDeployment(deploymentid, timeline);
+        store.unwatchDeployment(deploymentid, publisher);
+        if (dispatcher != null) {
+            store.unwatchDeployment(deploymentid, dispatcher);
+        }
+        CompletableFuture<Void> durable = CompletableFuture.completedFuture(null);
+        if (journal != null) {
+            store.unwatchDeployment(deploymentid, journalwatcher);
+            journal.end(journalnumber, aggregator.isCompleted() && !cancelled);
+            durable = journal.sync();
+        }
+        timeline.finish();
+        MaestroMetrics.getInstance().recordDeployment(timeline, aggregator.isCompleted());
+        logger.info("Status of Nodes: " + aggregator.toString());
+        if (Boolean.getBoolean(TIMELINE_PROPERTY)) {
+            logger.info(timeline.dump());
+        }
+
+        if (cancelled) {
+            logger.warning("Deployment " + deploymentid + " cancelled");
+        } else if (aggregator.isCompleted()) {
+            logger.info("Deployment " + deploymentid + " completed in " + (scheduler.currentTimeMillis() - startTime) + " ms");
+        } else if (aggregator.isSettled()) {
+            logger.severe("Deployment " + deploymentid + " settled with " + aggregator.getFailed() + " failed nodes");
+        } else {
+            logger.severe("Deployment " + deploymentid + " timed out");
+        }
+
         logger.info("Terminating Orchestrator for " + deploymentid);
-        cachemngr.stop();
-        
+        if (durable.isDone()) {
+            finish(running);
+        } else {
+            durable.whenComplete((ignored, error) -> scheduler.execute(() -> finish(running)));
+        }
     }//EoM
 
-    private boolean areAllCompleted(Map<String, String> statusmap) {
-        boolean completed = false;
-        //TODO
-        return completed;
+    //reports the end of the deployment and stops its agents
+    private void finish(Agent[] running) {
+        publisher.publish(cancelled ? Deployment.State.CANCELLED : aggregator.isCompleted() ? Deployment.State.COMPLETED : Deployment.State.FAILED);
+        store.release();
+        completion.complete(aggregator.isCompleted() && !cancelled);
+        for (int index = 0; running != null && index < running.length; index++) {
+            if (running[index] != null) {
+                running[index].stop();
+            }
+        }
     }//EoM
 
-    private boolean hasTimeoutExceeded(long startTime) {
-        boolean exceeded = false;
-        long duration = System.currentTimeMillis() - startTime;
-        if (duration > MAX_TIMEOUT_FOR_DEPLOYMENT_MILLISECONDS) {
-            exceeded = true;
+    /**
+     * Cancels every agent and ends the deployment unsuccessfully.
+     *
+     * @throws IllegalStateException if the deployment has not been started
+     */
+    public void cancel() {
+        Agent[] running;
+        synchronized (this) {
+            if (agents == null) {
+                throw new IllegalStateException("Deployment " + deploymentid + " has not been started");
+            }
+            if (terminated) {
+                return;
+            }
+            cancelled = true;
+            running = agents;
         }
-        return exceeded;
-    }//EoM    
-    
+        for (Agent agent : running) {
+            if (agent != null) {
+                agent.cancel();
+            }
+        }
+        scheduler.execute(this::terminate);
+    }//EoM
+
+    /**
+     * Pushes the status events of the deployment to the listener, with
+     * DEFAULT_SUBSCRIPTION_CAPACITY. See StatusListener.
+     */
+    public StatusSubscription subscribe(StatusListener listener) {
+        return subscribe(listener, DEFAULT_SUBSCRIPTION_CAPACITY);
+    }//EoM
+
+    /**
+     * Pushes the status events of the deployment to the listener. A listener
+     * subscribing while the deployment runs first gets its state and the
+     * current status of every node; after the deployment has ended, only
+     * its final state.
+     *
+     * @param capacity events buffered for a listener that lags behind before
+     * the events of each node are coalesced
+     */
+    public StatusSubscription subscribe(StatusListener listener, int capacity) {
+        StatusSubscription subscription = new StatusSubscription(listener, capacity);
+        publisher.subscribe(subscription);
+        return subscription;
+    }//EoM
+
+    //for subscriptions made before the orchestrator existed
+    void attach(StatusSubscription subscription) {
+        publisher.subscribe(subscription);
+    }//EoM
+
+    //must be called before start()
+    void setReporting(boolean reporting) {
+        this.reporting = reporting;
+    }//EoM
+
+    /**
+     * Counts the started dependencies of every node here and dispatches the
+     * start of its agent, instead of having every agent watch the status keys
+     * of its dependencies. Defaults to PUSH_SCHEDULING_PROPERTY; must be
+     * called before start().
+     */
+    public void setPushScheduling(boolean pushscheduling) {
+        this.pushscheduling = pushscheduling;
+    }//EoM
+
+    /**
+     * @return the per-status node counters, e.g. {4=2, 6=7}
+     */
+    public String getSummary() {
+        return aggregator == null ? "{}" : aggregator.toString();
+    }//EoM
+
+    /**
+     * @return the status timeline of the deployment, null before start()
+     */
+    public DeploymentTimeline getTimeline() {
+        return timeline;
+    }//EoM
+
+    /**
+     * @return completes once every agent has terminated, which is when the
+     * deployment ends unless agents are still running past its deadline
+     */
+    public CompletableFuture<Void> getAgentTermination() {
+        return agentstermination;
+    }//EoM
+
+    public CompletableFuture<Boolean> getCompletion() {
+        return completion;
+    }//EoM
+
 }//EoC
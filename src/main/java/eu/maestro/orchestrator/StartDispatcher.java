@@ -0,0 +1,110 @@
+package eu.maestro.orchestrator;
+
+import static eu.maestro.agent.Agent.STATUS_STARTED;
+import eu.maestro.agent.Agent;
+import eu.maestro.store.StatusKey;
+import eu.maestro.store.StatusWatcher;
+import eu.maestro.util.DeploymentGraph;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Push scheduling of one deployment: keeps per node the number of its
+ * dependencies that have not started, and dispatches the start of a node as
+ * soon as that count drops to zero, in the order the nodes became ready.
+ * Agents that are dispatched do not watch the status keys of their
+ * dependencies; one watcher of the deployment replaces all of them.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class StartDispatcher implements StatusWatcher {
+
+    private final DeploymentGraph graph;
+    private final String deploymentid;
+    //dependencies of each node that have not started yet
+    private final int[] indegrees;
+    private final boolean[] started;
+    //nodes whose dependencies have all started, waiting to be dispatched
+    private final ArrayDeque<Integer> ready = new ArrayDeque<>();
+    private Agent[] agents;
+    private long dispatched = 0;
+
+    public StartDispatcher(DeploymentGraph graph, String deploymentid) {
+        this.graph = graph;
+        this.deploymentid = deploymentid;
+        indegrees = new int[graph.size()];
+        started = new boolean[graph.size()];
+        for (int index = 0; index < indegrees.length; index++) {
+            indegrees[index] = graph.getDependencies(index).length;
+        }
+    }//EoCon
+
+    @Override
+    public void onStatus(StatusKey key, int status) {
+        update(key, status);
+    }//EoM
+
+    public void update(StatusKey key, Integer status) {
+        if (status == null || status != STATUS_STARTED || !key.getDeploymentid().equals(deploymentid) || key.getIndex() >= started.length) {
+            return;
+        }
+        List<Agent> dispatch;
+        synchronized (this) {
+            if (started[key.getIndex()]) {
+                return;
+            }
+            started[key.getIndex()] = true;
+            for (int dependent : graph.getDependents(key.getIndex())) {
+                if (--indegrees[dependent] == 0) {
+                    ready.add(dependent);
+                }
+            }
+            dispatch = drain();
+        }
+        dispatch(dispatch);
+    }//EoM
+
+    /**
+     * Hands over the agents of the deployment, null where a node has no
+     * agent, and dispatches the nodes that became ready before.
+     */
+    public void attach(Agent[] agents) {
+        List<Agent> dispatch;
+        synchronized (this) {
+            this.agents = agents;
+            dispatch = drain();
+        }
+        dispatch(dispatch);
+    }//EoM
+
+    //the agents of the ready nodes, once the agents are known
+    private List<Agent> drain() {
+        List<Agent> dispatch = new ArrayList<>();
+        if (agents == null) {
+            return dispatch;
+        }
+        Integer index;
+        while ((index = ready.poll()) != null) {
+            if (agents[index] != null) {
+                dispatch.add(agents[index]);
+            }
+        }
+        dispatched += dispatch.size();
+        return dispatch;
+    }//EoM
+
+    private static void dispatch(List<Agent> dispatch) {
+        for (Agent agent : dispatch) {
+            agent.dispatch();
+        }
+    }//EoM
+
+    /**
+     * @return the starts dispatched so far
+     */
+    public synchronized long getDispatched() {
+        return dispatched;
+    }//EoM
+
+}//EoC
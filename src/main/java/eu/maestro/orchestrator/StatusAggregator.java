@@ -0,0 +1,112 @@
+package eu.maestro.orchestrator;
+
+import static eu.maestro.agent.Agent.STATUS_STARTED;
+import static eu.maestro.agent.Agent.STATUS_TERMINATED_DUE_TO_BAD_LAUNCH;
+import eu.maestro.store.StatusKey;
+import eu.maestro.store.StatusStore;
+import eu.maestro.store.StatusWatcher;
+import static eu.maestro.store.StatusStore.STATUS_UNKNOWN;
+
+/**
+ * Keeps per-state counters for the nodes of one deployment. Counters are
+ * updated incrementally from status change events (or from a batched read),
+ * so the orchestrator learns that the deployment has settled the moment the
+ * last node reaches STATUS_STARTED or an error status.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class StatusAggregator implements StatusWatcher {
+
+    //status codes range from STATUS_TERMINATED_DUE_TO_BAD_LAUNCH to STATUS_STARTED
+    private static final int OFFSET = -STATUS_TERMINATED_DUE_TO_BAD_LAUNCH;
+
+    private final String deploymentid;
+    private final int[] statuses;
+    private final int[] counters = new int[OFFSET + STATUS_STARTED + 1];
+    private int settled = 0;
+    private int failed = 0;
+    private final Runnable onSettled;
+
+    /**
+     * @param onSettled runs once, on the thread of the update that settles
+     * the deployment
+     */
+    public StatusAggregator(String deploymentid, int size, Runnable onSettled) {
+        this.deploymentid = deploymentid;
+        this.onSettled = onSettled;
+        statuses = new int[size];
+        counters[STATUS_UNKNOWN + OFFSET] = size;
+    }//EoCon
+
+    @Override
+    public void onStatus(StatusKey key, int status) {
+        update(key, status);
+    }//EoM
+
+    public void update(StatusKey key, Integer status) {
+        if (status != null && key.getDeploymentid().equals(deploymentid) && key.getIndex() < statuses.length) {
+            update(key.getIndex(), status);
+        }
+    }//EoM
+
+    /**
+     * Ignores a status that is not a forward transition from the counted
+     * one, as a batched read older than an event already applied would be.
+     */
+    public void update(int index, int status) {
+        synchronized (this) {
+            int previous = statuses[index];
+            if (previous == status || !StatusStore.isForward(previous, status) || status < STATUS_TERMINATED_DUE_TO_BAD_LAUNCH || status > STATUS_STARTED) {
+                return;
+            }
+            boolean wassettled = isSettled();
+            statuses[index] = status;
+            counters[previous + OFFSET]--;
+            counters[status + OFFSET]++;
+            settled += (isSettled(status) ? 1 : 0) - (isSettled(previous) ? 1 : 0);
+            failed += (status < 0 ? 1 : 0) - (previous < 0 ? 1 : 0);
+            if (wassettled || !isSettled()) {
+                return;
+            }
+        }
+        onSettled.run();
+    }//EoM
+
+    private static boolean isSettled(int status) {
+        return status == STATUS_STARTED || status < 0;
+    }//EoM
+
+    /**
+     * Every node has either started or terminated with an error status.
+     */
+    public synchronized boolean isSettled() {
+        return settled == statuses.length;
+    }//EoM
+
+    public synchronized boolean isCompleted() {
+        return isSettled() && failed == 0;
+    }//EoM
+
+    public synchronized int getFailed() {
+        return failed;
+    }//EoM
+
+    public synchronized int getCount(int status) {
+        return counters[status + OFFSET];
+    }//EoM
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < counters.length; i++) {
+            if (counters[i] > 0) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(i - OFFSET).append('=').append(counters[i]);
+            }
+        }
+        return sb.append('}').toString();
+    }//EoM
+
+}//EoC
@@ -0,0 +1,105 @@
+package eu.maestro.orchestrator;
+
+import eu.maestro.orchestrator.Deployment.State;
+
+/**
+ * A change published by an Orchestrator: either a node of the deployment
+ * moved to a new status, or the deployment as a whole changed its state.
+ *
+ * @author Panagiotis Gouvas
+ */
+public final class StatusEvent {
+
+    public enum Kind {
+        NODE, DEPLOYMENT
+    }//EoE
+
+    private final Kind kind;
+    private final String deploymentid;
+    private final int index;
+    private final String nodename;
+    private final int previous;
+    private final int status;
+    private final State state;
+    private final long time;
+
+    private StatusEvent(Kind kind, String deploymentid, int index, String nodename, int previous, int status, State state, long time) {
+        this.kind = kind;
+        this.deploymentid = deploymentid;
+        this.index = index;
+        this.nodename = nodename;
+        this.previous = previous;
+        this.status = status;
+        this.state = state;
+        this.time = time;
+    }//EoCon
+
+    static StatusEvent node(String deploymentid, int index, String nodename, int previous, int status, long time) {
+        return new StatusEvent(Kind.NODE, deploymentid, index, nodename, previous, status, null, time);
+    }//EoM
+
+    static StatusEvent deployment(String deploymentid, State state, long time) {
+        return new StatusEvent(Kind.DEPLOYMENT, deploymentid, -1, null, 0, 0, state, time);
+    }//EoM
+
+    public Kind getKind() {
+        return kind;
+    }//EoM
+
+    public String getDeploymentid() {
+        return deploymentid;
+    }//EoM
+
+    /**
+     * @return the index of the node in the deployment graph, -1 for a
+     * deployment event
+     */
+    public int getIndex() {
+        return index;
+    }//EoM
+
+    public String getNodename() {
+        return nodename;
+    }//EoM
+
+    /**
+     * @return the status the node had before, as last published; an earlier
+     * status if events were coalesced in between
+     */
+    public int getPrevious() {
+        return previous;
+    }//EoM
+
+    public int getStatus() {
+        return status;
+    }//EoM
+
+    /**
+     * @return the new state of the deployment, null for a node event
+     */
+    public State getState() {
+        return state;
+    }//EoM
+
+    /**
+     * @return milliseconds on the clock of the orchestrator
+     */
+    public long getTime() {
+        return time;
+    }//EoM
+
+    /**
+     * Merges a later event of the same node into this one.
+     */
+    StatusEvent coalesce(StatusEvent later) {
+        return node(deploymentid, index, nodename, previous, later.status, later.time);
+    }//EoM
+
+    @Override
+    public String toString() {
+        return kind == Kind.NODE
+                ? "StatusEvent{" + deploymentid + "_" + nodename + " " + previous + " -> " + status + " at " + time + '}'
+                : "StatusEvent{" + deploymentid + " " + state + " at " + time + '}';
+    }//EoM
+
+}//EoC
@@ -0,0 +1,30 @@
+package eu.maestro.orchestrator;
+
+/**
+ * Receives the status events of a deployment, pushed by its Orchestrator.
+ * Calls for one subscription never overlap and arrive in order, on a thread
+ * of the orchestrator, so a listener must not block. A listener only gets as
+ * many events as it has requested through its subscription; while it lags
+ * behind, pending events of the same node are coalesced into one.
+ *
+ * @author Panagiotis Gouvas
+ */
+public interface StatusListener {
+
+    /**
+     * Called first. By default requests every event without limit.
+     */
+    default void onSubscribe(StatusSubscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }//EoM
+
+    void onEvent(StatusEvent event);
+
+    /**
+     * Called last, after the event with the final state of the deployment,
+     * unless the subscription was cancelled.
+     */
+    default void onComplete() {
+    }//EoM
+
+}//EoI
@@ -0,0 +1,112 @@
+package eu.maestro.orchestrator;
+
+import eu.maestro.orchestrator.Deployment.State;
+import eu.maestro.store.StatusKey;
+import eu.maestro.store.StatusStore;
+import eu.maestro.store.StatusWatcher;
+import eu.maestro.time.Scheduler;
+import eu.maestro.util.DeploymentGraph;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Turns the status changes of one deployment into StatusEvents for its
+ * subscriptions. A subscription that joins a running deployment first gets
+ * the current state and the current status of every node.
+ *
+ * @author Panagiotis Gouvas
+ */
+class StatusPublisher implements StatusWatcher {
+
+    private final DeploymentGraph graph;
+    private final String deploymentid;
+    private final Scheduler scheduler;
+    private final int[] statuses;
+    private final List<StatusSubscription> subscriptions = new ArrayList<>();
+    //null until the deployment is launched
+    private State state;
+
+    StatusPublisher(DeploymentGraph graph, String deploymentid, Scheduler scheduler) {
+        this.graph = graph;
+        this.deploymentid = deploymentid;
+        this.scheduler = scheduler;
+        this.statuses = new int[graph.size()];
+    }//EoCon
+
+    void subscribe(StatusSubscription subscription) {
+        synchronized (this) {
+            if (state != null) {
+                //the final state stays the last event
+                long now = scheduler.currentTimeMillis();
+                if (!isFinal(state)) {
+                    subscription.offer(StatusEvent.deployment(deploymentid, state, now));
+                }
+                for (int index = 0; index < statuses.length; index++) {
+                    if (statuses[index] != StatusStore.STATUS_UNKNOWN) {
+                        subscription.offer(StatusEvent.node(deploymentid, index, graph.getName(index), StatusStore.STATUS_UNKNOWN, statuses[index], now));
+                    }
+                }
+                if (isFinal(state)) {
+                    subscription.offer(StatusEvent.deployment(deploymentid, state, now));
+                }
+            }
+            if (isFinal(state)) {
+                subscription.complete();
+            } else {
+                subscriptions.add(subscription);
+            }
+        }
+        subscription.start(scheduler::execute);
+    }//EoM
+
+    @Override
+    public void onStatus(StatusKey key, int status) {
+        int index = key.getIndex();
+        if (index >= statuses.length) {
+            return;
+        }
+        synchronized (this) {
+            int previous = statuses[index];
+            //a catch-up read older than the events already seen only fills gaps
+            if (previous == status || !StatusStore.isForward(previous, status) || isFinal(state)) {
+                return;
+            }
+            statuses[index] = status;
+            if (!subscriptions.isEmpty()) {
+                offer(StatusEvent.node(deploymentid, index, graph.getName(index), previous, status, scheduler.currentTimeMillis()));
+            }
+        }
+    }//EoM
+
+    /**
+     * Publishes a new state of the deployment; after a final state the
+     * subscriptions are completed.
+     */
+    synchronized void publish(State next) {
+        state = next;
+        offer(StatusEvent.deployment(deploymentid, next, scheduler.currentTimeMillis()));
+        if (isFinal(next)) {
+            for (StatusSubscription subscription : subscriptions) {
+                subscription.complete();
+            }
+            subscriptions.clear();
+        }
+    }//EoM
+
+    private void offer(StatusEvent event) {
+        for (Iterator<StatusSubscription> it = subscriptions.iterator(); it.hasNext();) {
+            StatusSubscription subscription = it.next();
+            if (subscription.isCancelled()) {
+                it.remove();
+            } else {
+                subscription.offer(event);
+            }
+        }
+    }//EoM
+
+    private static boolean isFinal(State state) {
+        return state == State.COMPLETED || state == State.FAILED || state == State.CANCELLED;
+    }//EoM
+
+}//EoC
@@ -0,0 +1,212 @@
+package eu.maestro.orchestrator;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The link between an Orchestrator and one StatusListener. Events wait in a
+ * buffer until the listener has requested them. Once the buffer exceeds its
+ * capacity it is compacted to the latest event of every node, so a slow
+ * listener costs at most one pending event per node, and still sees the last
+ * status of each node and every change of the deployment state.
+ *
+ * @author Panagiotis Gouvas
+ */
+public final class StatusSubscription {
+
+    private static final Logger logger = Logger.getLogger(StatusSubscription.class.getName());
+
+    //events delivered in one go before the executor is handed back
+    private static final int BATCH = 64;
+
+    private final StatusListener listener;
+    private final int capacity;
+    private Executor executor;
+    private ArrayDeque<StatusEvent> pending = new ArrayDeque<>();
+    private int threshold;
+    private long demand = 0;
+    //set while a drain is scheduled or running, and until onSubscribe returns
+    private boolean draining = true;
+    private boolean completed = false;
+    private boolean finished = false;
+    private boolean cancelled = false;
+    private long delivered = 0;
+    private long coalesced = 0;
+
+    StatusSubscription(StatusListener listener, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive, not " + capacity);
+        }
+        this.listener = listener;
+        this.capacity = capacity;
+        this.threshold = capacity;
+    }//EoCon
+
+    /**
+     * Starts delivering on the executor, beginning with onSubscribe.
+     */
+    void start(Executor executor) {
+        synchronized (this) {
+            this.executor = executor;
+        }
+        executor.execute(() -> {
+            try {
+                listener.onSubscribe(this);
+            } catch (RuntimeException ex) {
+                logger.log(Level.SEVERE, null, ex);
+                cancel();
+            }
+            drain();
+        });
+    }//EoM
+
+    /**
+     * Allows n more events to be delivered.
+     *
+     * @throws IllegalArgumentException if n is not positive
+     */
+    public void request(long n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Requested " + n + " events");
+        }
+        synchronized (this) {
+            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+        }
+        schedule();
+    }//EoM
+
+    /**
+     * Stops the delivery; events still pending are discarded.
+     */
+    public void cancel() {
+        synchronized (this) {
+            cancelled = true;
+            pending.clear();
+        }
+    }//EoM
+
+    void offer(StatusEvent event) {
+        synchronized (this) {
+            if (cancelled || completed) {
+                return;
+            }
+            pending.add(event);
+            if (pending.size() > threshold) {
+                compact();
+            }
+        }
+        schedule();
+    }//EoM
+
+    //no more events follow; onComplete once the pending ones are delivered
+    void complete() {
+        synchronized (this) {
+            completed = true;
+        }
+        schedule();
+    }//EoM
+
+    //keeps the latest event of every node where its first pending event was
+    private void compact() {
+        Map<Object, StatusEvent> latest = new LinkedHashMap<>();
+        for (StatusEvent event : pending) {
+            if (event.getKind() == StatusEvent.Kind.NODE) {
+                latest.merge(event.getIndex(), event, StatusEvent::coalesce);
+            } else {
+                latest.put(new Object(), event);
+            }
+        }
+        coalesced += pending.size() - latest.size();
+        pending = new ArrayDeque<>(latest.values());
+        threshold = Math.max(capacity, pending.size() * 2);
+    }//EoM
+
+    private void schedule() {
+        Executor target;
+        synchronized (this) {
+            if (draining || executor == null || !isReady()) {
+                return;
+            }
+            draining = true;
+            target = executor;
+        }
+        target.execute(this::drain);
+    }//EoM
+
+    private boolean isReady() {
+        return !cancelled && ((demand > 0 && !pending.isEmpty()) || (completed && !finished && pending.isEmpty()));
+    }//EoM
+
+    private void drain() {
+        for (int i = 0; i < BATCH; i++) {
+            StatusEvent event = null;
+            synchronized (this) {
+                if (!isReady()) {
+                    draining = false;
+                    return;
+                }
+                if (pending.isEmpty()) {
+                    finished = true;
+                } else {
+                    event = pending.poll();
+                    if (demand != Long.MAX_VALUE) {
+                        demand--;
+                    }
+                    delivered++;
+                    if (pending.size() < threshold / 4) {
+                        threshold = Math.max(capacity, threshold / 2);
+                    }
+                }
+            }
+            try {
+                if (event == null) {
+                    listener.onComplete();
+                } else {
+                    listener.onEvent(event);
+                }
+            } catch (RuntimeException ex) {
+                logger.log(Level.SEVERE, null, ex);
+                cancel();
+            }
+        }
+        Executor target;
+        synchronized (this) {
+            draining = false;
+            if (!isReady()) {
+                return;
+            }
+            draining = true;
+            target = executor;
+        }
+        target.execute(this::drain);
+    }//EoM
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }//EoM
+
+    /**
+     * @return events that were merged into a later event of the same node
+     */
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }//EoM
+
+    public synchronized long getDelivered() {
+        return delivered;
+    }//EoM
+
+    public synchronized int getPending() {
+        return pending.size();
+    }//EoM
+
+    @Override
+    public synchronized String toString() {
+        return "StatusSubscription{" + "delivered=" + delivered + ", pending=" + pending.size() + ", coalesced=" + coalesced + ", demand=" + demand + '}';
+    }//EoM
+
+}//EoC
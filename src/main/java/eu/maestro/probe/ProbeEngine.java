@@ -0,0 +1,494 @@
+package eu.maestro.probe;
+
+import eu.maestro.agent.exception.TimeOutException;
+import eu.maestro.time.Cancellable;
+import eu.maestro.time.SystemScheduler;
+import eu.maestro.time.TimingWheel;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Readiness probes of all containers of the JVM, multiplexed on a few
+ * non-blocking selector threads instead of a blocked thread per container.
+ * A probe repeats its attempt until the target is ready or its timeout has
+ * elapsed. After a failed attempt it waits maestro.probe.interval.millis,
+ * multiplied by maestro.probe.backoff for every further failure up to
+ * maestro.probe.interval.max.millis, and spread by maestro.probe.jitter so
+ * that probes started together do not stay in step. An attempt that is not
+ * answered within maestro.probe.attempt.millis counts as failed.
+ *
+ * All socket work of a probe happens on the thread of its selector; waits are
+ * kept on the shared TimingWheel, and the result is delivered on the executor
+ * of the caller. Host names are resolved on resolver threads of their own, so
+ * a slow lookup never holds up a selector; a probe keeps its address once it
+ * has been resolved.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class ProbeEngine {
+
+    private static final Logger logger = Logger.getLogger(ProbeEngine.class.getName());
+
+    public static final String SELECTORS_PROPERTY = "maestro.probe.selectors";
+    public static final String INTERVAL_PROPERTY = "maestro.probe.interval.millis";
+    public static final String MAX_INTERVAL_PROPERTY = "maestro.probe.interval.max.millis";
+    public static final String BACKOFF_PROPERTY = "maestro.probe.backoff";
+    public static final String JITTER_PROPERTY = "maestro.probe.jitter";
+    public static final String ATTEMPT_PROPERTY = "maestro.probe.attempt.millis";
+    public static final int DEFAULT_SELECTORS = 1;
+    public static final long DEFAULT_INTERVAL_MILLIS = 200;
+    public static final long DEFAULT_MAX_INTERVAL_MILLIS = 5000;
+    public static final double DEFAULT_BACKOFF = 2.0;
+    public static final double DEFAULT_JITTER = 0.2;
+    public static final long DEFAULT_ATTEMPT_MILLIS = 2000;
+
+    //enough for the status line of an HTTP response
+    private static final int RESPONSE_BYTES = 128;
+
+    private static ProbeEngine shared = null;
+
+    private static final AtomicInteger resolvers = new AtomicInteger();
+    //blocking name lookups, never on a selector thread
+    private static final ExecutorService resolver = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "maestro-probe-resolver-" + resolvers.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Loop[] loops;
+    private final TimingWheel timer = SystemScheduler.getTimer();
+    private final long interval;
+    private final long maxinterval;
+    private final double backoff;
+    private final double jitter;
+    private final long attemptmillis;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong ready = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    /**
+     * Engine configured from the maestro.probe.* system properties.
+     */
+    public ProbeEngine() throws IOException {
+        this(Integer.getInteger(SELECTORS_PROPERTY, DEFAULT_SELECTORS), Long.getLong(INTERVAL_PROPERTY, DEFAULT_INTERVAL_MILLIS),
+                Long.getLong(MAX_INTERVAL_PROPERTY, DEFAULT_MAX_INTERVAL_MILLIS),
+                Double.parseDouble(System.getProperty(BACKOFF_PROPERTY, "" + DEFAULT_BACKOFF)),
+                Double.parseDouble(System.getProperty(JITTER_PROPERTY, "" + DEFAULT_JITTER)), Long.getLong(ATTEMPT_PROPERTY, DEFAULT_ATTEMPT_MILLIS));
+    }//EoCon
+
+    /**
+     * @param selectors selector threads the probes are spread over
+     * @param interval wait after the first failed attempt
+     * @param maxinterval longest wait between attempts
+     * @param backoff growth of the wait with every further failure
+     * @param jitter the wait is drawn from +/- this fraction of it
+     * @param attemptmillis time an attempt may take
+     */
+    public ProbeEngine(int selectors, long interval, long maxinterval, double backoff, double jitter, long attemptmillis) throws IOException {
+        if (selectors < 1 || interval < 0 || maxinterval < interval || backoff < 1 || jitter < 0 || jitter >= 1 || attemptmillis < 1) {
+            throw new IllegalArgumentException("Invalid probe configuration");
+        }
+        this.interval = interval;
+        this.maxinterval = maxinterval;
+        this.backoff = backoff;
+        this.jitter = jitter;
+        this.attemptmillis = attemptmillis;
+        loops = new Loop[selectors];
+        for (int i = 0; i < selectors; i++) {
+            loops[i] = new Loop("maestro-probe-" + i);
+        }
+    }//EoCon
+
+    public static synchronized ProbeEngine getShared() throws IOException {
+        if (shared == null) {
+            shared = new ProbeEngine();
+        }
+        return shared;
+    }//EoM
+
+    /**
+     * Probes the target until it is ready. Cancelling the returned future
+     * stops the probe.
+     *
+     * @param timeoutMillis time after which the probe gives up with a
+     * TimeOutException
+     * @param callbacks runs the completion of the returned future
+     */
+    public CompletableFuture<Void> probe(ProbeTarget target, long timeoutMillis, Executor callbacks) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        Loop loop = loops[Math.floorMod(next.getAndIncrement(), loops.length)];
+        Probe probe = new Probe(target, loop, result, callbacks);
+        active.incrementAndGet();
+        probe.deadline = timer.schedule(() -> loop.submit(probe::expire), timeoutMillis);
+        result.whenComplete((ignored, error) -> {
+            if (result.isCancelled()) {
+                loop.submit(probe::stop);
+            }
+        });
+        loop.submit(probe::attempt);
+        return result;
+    }//EoM
+
+    /**
+     * Stops the selector threads; probes still running never complete.
+     */
+    public void close() {
+        for (Loop loop : loops) {
+            loop.close();
+        }
+    }//EoM
+
+    /**
+     * @return probes neither ready nor expired nor cancelled
+     */
+    public int getActive() {
+        return active.get();
+    }//EoM
+
+    /**
+     * @return connection attempts made so far
+     */
+    public long getAttempts() {
+        return attempts.get();
+    }//EoM
+
+    public long getReady() {
+        return ready.get();
+    }//EoM
+
+    public long getExpired() {
+        return expired.get();
+    }//EoM
+
+    public int getSelectors() {
+        return loops.length;
+    }//EoM
+
+    @Override
+    public String toString() {
+        return "ProbeEngine{" + "selectors=" + loops.length + ", active=" + active + ", attempts=" + attempts + ", ready=" + ready + ", expired=" + expired + '}';
+    }//EoM
+
+    /**
+     * A selector and the thread that owns it. Other threads hand work to the
+     * loop with submit().
+     */
+    private final class Loop implements Runnable {
+
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean woken = new AtomicBoolean(false);
+        private volatile boolean open = true;
+
+        private Loop(String name) throws IOException {
+            selector = Selector.open();
+            Thread thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }//EoCon
+
+        private void submit(Runnable task) {
+            tasks.add(task);
+            //one wakeup for all tasks queued until the loop picks them up
+            if (woken.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }//EoM
+
+        @Override
+        public void run() {
+            try {
+                while (open) {
+                    selector.select();
+                    woken.set(false);
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException ex) {
+                            logger.log(Level.SEVERE, null, ex);
+                        }
+                    }
+                    Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                    while (selected.hasNext()) {
+                        SelectionKey key = selected.next();
+                        selected.remove();
+                        Probe probe = (Probe) key.attachment();
+                        //disconnected by a task of this pass after the key was selected
+                        if (!key.isValid() || key != probe.key) {
+                            continue;
+                        }
+                        try {
+                            probe.onSelected(key);
+                        } catch (RuntimeException ex) {
+                            logger.log(Level.WARNING, "Probe " + probe.target + " failed", ex);
+                            probe.failed();
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException ex) {
+                if (open) {
+                    logger.log(Level.SEVERE, null, ex);
+                }
+            }
+        }//EoM
+
+        private void close() {
+            open = false;
+            try {
+                selector.close();
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, null, ex);
+            }
+        }//EoM
+
+    }//EoC
+
+    /**
+     * The state of one probe, only touched on the thread of its loop.
+     */
+    private final class Probe {
+
+        private final ProbeTarget target;
+        private final Loop loop;
+        private final CompletableFuture<Void> result;
+        private final Executor callbacks;
+        private InetSocketAddress address;
+        private Cancellable deadline;
+        private Cancellable wait;
+        private SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer request;
+        private ByteBuffer response;
+        private int failures = 0;
+        //tells the timeout of an attempt from the timeouts of earlier ones
+        private int attempt = 0;
+        //the address of the current attempt is being looked up
+        private boolean resolving = false;
+        private boolean done = false;
+
+        private Probe(ProbeTarget target, Loop loop, CompletableFuture<Void> result, Executor callbacks) {
+            this.target = target;
+            this.loop = loop;
+            this.result = result;
+            this.callbacks = callbacks;
+        }//EoCon
+
+        private void attempt() {
+            if (done) {
+                return;
+            }
+            attempts.incrementAndGet();
+            int current = ++attempt;
+            wait = timer.schedule(() -> loop.submit(() -> timeout(current)), attemptmillis);
+            if (address == null || address.isUnresolved()) {
+                resolving = true;
+                try {
+                    resolver.execute(() -> {
+                        InetSocketAddress resolved = new InetSocketAddress(target.getHost(), target.getPort());
+                        loop.submit(() -> resolved(current, resolved));
+                    });
+                } catch (RejectedExecutionException ex) {
+                    failed();
+                }
+                return;
+            }
+            connect();
+        }//EoM
+
+        private void resolved(int current, InetSocketAddress resolved) {
+            if (done || current != attempt || !resolving) {
+                return;
+            }
+            resolving = false;
+            address = resolved;
+            if (resolved.isUnresolved()) {
+                failed();
+            } else {
+                connect();
+            }
+        }//EoM
+
+        private void connect() {
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                //closed with a reset, so probes leave no sockets in TIME_WAIT behind
+                channel.setOption(StandardSocketOptions.SO_LINGER, 0);
+                if (channel.connect(address)) {
+                    connected();
+                } else {
+                    key = channel.register(loop.selector, SelectionKey.OP_CONNECT, this);
+                }
+            } catch (IOException | UnresolvedAddressException ex) {
+                failed();
+            }
+        }//EoM
+
+        private void onSelected(SelectionKey selected) {
+            try {
+                if (selected.isConnectable()) {
+                    if (channel.finishConnect()) {
+                        connected();
+                    }
+                } else if (selected.isWritable()) {
+                    channel.write(request);
+                    if (!request.hasRemaining()) {
+                        selected.interestOps(SelectionKey.OP_READ);
+                    }
+                } else if (selected.isReadable()) {
+                    read();
+                }
+            } catch (IOException ex) {
+                failed();
+            }
+        }//EoM
+
+        private void connected() throws IOException {
+            if (target.getKind() == ProbeTarget.Kind.TCP) {
+                succeeded();
+                return;
+            }
+            request = target.request();
+            response = ByteBuffer.allocate(RESPONSE_BYTES);
+            if (key == null) {
+                key = channel.register(loop.selector, SelectionKey.OP_WRITE, this);
+            } else {
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+        }//EoM
+
+        private void read() throws IOException {
+            int count = channel.read(response);
+            byte[] bytes = response.array();
+            int length = response.position();
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] == '\n') {
+                    status(new String(bytes, 0, i, StandardCharsets.US_ASCII));
+                    return;
+                }
+            }
+            if (count < 0 || !response.hasRemaining()) {
+                failed();
+            }
+        }//EoM
+
+        //HTTP/1.x 200 OK
+        private void status(String line) {
+            String[] parts = line.trim().split(" ");
+            int code = -1;
+            if (parts.length >= 2 && parts[0].startsWith("HTTP/")) {
+                try {
+                    code = Integer.parseInt(parts[1]);
+                } catch (NumberFormatException ex) {
+                    code = -1;
+                }
+            }
+            if (code >= 200 && code < 400) {
+                succeeded();
+            } else {
+                failed();
+            }
+        }//EoM
+
+        private void timeout(int current) {
+            if (current == attempt && (channel != null || resolving)) {
+                failed();
+            }
+        }//EoM
+
+        private void succeeded() {
+            disconnect();
+            finish();
+            ready.incrementAndGet();
+            callbacks.execute(() -> result.complete(null));
+        }//EoM
+
+        //waits before the next attempt
+        private void failed() {
+            disconnect();
+            if (done) {
+                return;
+            }
+            double delay = Math.min(maxinterval, interval * Math.pow(backoff, failures++));
+            delay *= 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+            wait = timer.schedule(() -> loop.submit(this::attempt), (long) delay);
+        }//EoM
+
+        private void expire() {
+            if (done) {
+                return;
+            }
+            disconnect();
+            finish();
+            expired.incrementAndGet();
+            logger.warning("Probe " + target + " was not ready after " + attempt + " attempts");
+            callbacks.execute(() -> result.completeExceptionally(new TimeOutException()));
+        }//EoM
+
+        private void stop() {
+            if (!done) {
+                disconnect();
+                finish();
+            }
+        }//EoM
+
+        private void finish() {
+            done = true;
+            active.decrementAndGet();
+            deadline.cancel();
+            if (wait != null) {
+                wait.cancel();
+            }
+        }//EoM
+
+        private void disconnect() {
+            resolving = false;
+            if (wait != null) {
+                wait.cancel();
+                wait = null;
+            }
+            if (key != null) {
+                key.cancel();
+                key = null;
+            }
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    logger.log(Level.FINE, null, ex);
+                }
+                channel = null;
+            }
+            request = null;
+            response = null;
+        }//EoM
+
+    }//EoC
+
+}//EoC
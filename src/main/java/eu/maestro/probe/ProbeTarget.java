@@ -0,0 +1,103 @@
+package eu.maestro.probe;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Where and how the readiness of a container is checked: tcp://host:port is
+ * ready once a connection is accepted, http://host:port/path once a GET of the
+ * path is answered with a 2xx or 3xx status.
+ *
+ * @author Panagiotis Gouvas
+ */
+public final class ProbeTarget {
+
+    public enum Kind {
+        TCP, HTTP
+    }//EoE
+
+    private final Kind kind;
+    private final String host;
+    private final int port;
+    private final String path;
+    private final byte[] request;
+
+    public ProbeTarget(Kind kind, String host, int port, String path) {
+        if (host == null || port < 1 || port > 65535) {
+            throw new IllegalArgumentException("Invalid probe address " + host + ":" + port);
+        }
+        this.kind = kind;
+        this.host = host;
+        this.port = port;
+        this.path = kind == Kind.HTTP ? (path == null || path.isEmpty() ? "/" : path) : null;
+        this.request = kind == Kind.HTTP
+                ? ("GET " + this.path + " HTTP/1.1\r\nHost: " + host + ":" + port + "\r\nUser-Agent: maestro-probe\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII)
+                : null;
+    }//EoCon
+
+    public static ProbeTarget tcp(String host, int port) {
+        return new ProbeTarget(Kind.TCP, host, port, null);
+    }//EoM
+
+    public static ProbeTarget http(String host, int port, String path) {
+        return new ProbeTarget(Kind.HTTP, host, port, path);
+    }//EoM
+
+    /**
+     * @param probe tcp://host:port or http://host[:port][/path][?query]
+     * @throws IllegalArgumentException if the probe cannot be parsed
+     */
+    public static ProbeTarget parse(String probe) {
+        URI uri;
+        try {
+            uri = new URI(probe);
+        } catch (URISyntaxException ex) {
+            throw new IllegalArgumentException("Invalid probe " + probe, ex);
+        }
+        String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase();
+        switch (scheme) {
+            case "tcp":
+                return tcp(uri.getHost(), uri.getPort());
+            case "http":
+                String path = uri.getRawPath();
+                if (uri.getRawQuery() != null) {
+                    path = (path == null || path.isEmpty() ? "/" : path) + "?" + uri.getRawQuery();
+                }
+                return http(uri.getHost(), uri.getPort() < 0 ? 80 : uri.getPort(), path);
+            default:
+                throw new IllegalArgumentException("Unsupported probe " + probe);
+        }
+    }//EoM
+
+    public Kind getKind() {
+        return kind;
+    }//EoM
+
+    public String getHost() {
+        return host;
+    }//EoM
+
+    public int getPort() {
+        return port;
+    }//EoM
+
+    /**
+     * @return the path of an HTTP probe, null for a TCP probe
+     */
+    public String getPath() {
+        return path;
+    }//EoM
+
+    //the request of an HTTP probe, ready to be written
+    ByteBuffer request() {
+        return ByteBuffer.wrap(request);
+    }//EoM
+
+    @Override
+    public String toString() {
+        return kind == Kind.TCP ? "tcp://" + host + ":" + port : "http://" + host + ":" + port + path;
+    }//EoM
+
+}//EoC
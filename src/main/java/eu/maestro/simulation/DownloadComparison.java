@@ -0,0 +1,92 @@
+package eu.maestro.simulation;
+
+import eu.maestro.util.DeploymentGraph;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compares the time until the root of a deployment has started when every
+ * agent downloads as soon as it gets to it, against downloads ordered by the
+ * DownloadScheduler, with all images going through one link of limited
+ * bandwidth.
+ *
+ * Usage: DownloadComparison [bandwidth bytes/s] [mean image bytes] [seed]
+ *
+ * @author Panagiotis Gouvas
+ */
+public class DownloadComparison {
+
+    public static void main(String[] args) throws IOException {
+        long bandwidth = args.length > 0 ? Long.parseLong(args[0]) : 1000L * 1000 * 1000;
+        long imagebytes = args.length > 1 ? Long.parseLong(args[1]) : 20L * 1000 * 1000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        Logger.getLogger("eu.maestro").setLevel(Level.OFF);
+
+        Map<String, DeploymentGraph> topologies = new LinkedHashMap<>();
+        topologies.put("4-ary tree of 341", tree(341, 4));
+        topologies.put("binary tree of 255", tree(255, 2));
+        topologies.put("spine of 8 with 40 leaves each", spine(8, 40));
+        topologies.put("random dag of 300", random(300, seed));
+
+        LatencyDistribution sizes = LatencyDistribution.uniform(imagebytes / 2, imagebytes * 3 / 2);
+        System.out.printf("%-32s %10s %10s %10s %10s%n", "topology", "unordered", "ranked", "prefetch", "budget");
+        for (Map.Entry<String, DeploymentGraph> topology : topologies.entrySet()) {
+            DeploymentGraph graph = topology.getValue();
+            long unordered = run(new Simulation(seed).setLink(bandwidth, sizes), graph);
+            long ranked = run(new Simulation(seed).setLink(bandwidth, sizes).setDownloadScheduler(4, 0, false), graph);
+            long prefetched = run(new Simulation(seed).setLink(bandwidth, sizes).setDownloadScheduler(4, 0, true), graph);
+            long budgeted = run(new Simulation(seed).setLink(bandwidth, sizes).setDownloadScheduler(graph.size(), bandwidth, true), graph);
+            System.out.printf("%-32s %10s %10s %10s %10s%n", topology.getKey(), unordered, ranked, prefetched, budgeted);
+        }
+    }//EoM
+
+    //milliseconds until every node and so the root has started, or -1
+    private static long run(Simulation simulation, DeploymentGraph graph) throws IOException {
+        Simulation.Result result = simulation.run(graph, "downloads");
+        return result.isCompleted() ? result.getDeploymentMillis() : -1;
+    }//EoM
+
+    private static DeploymentGraph tree(int nodes, int arity) {
+        DeploymentGraph.Builder builder = new DeploymentGraph.Builder().addNode("node0");
+        for (int i = 1; i < nodes; i++) {
+            builder.addDependency("node" + ((i - 1) / arity), "node" + i);
+        }
+        return builder.build();
+    }//EoM
+
+    //a chain of services, each with its own leaves
+    private static DeploymentGraph spine(int length, int leaves) {
+        DeploymentGraph.Builder builder = new DeploymentGraph.Builder().addNode("spine0");
+        for (int i = 0; i < length; i++) {
+            if (i + 1 < length) {
+                builder.addDependency("spine" + i, "spine" + (i + 1));
+            }
+            for (int j = 0; j < leaves; j++) {
+                builder.addDependency("spine" + i, "leaf" + i + "_" + j);
+            }
+        }
+        return builder.build();
+    }//EoM
+
+    //nodes on six layers, every node depends on up to three nodes of the next layer
+    private static DeploymentGraph random(int nodes, long seed) {
+        Random random = new Random(seed);
+        int width = nodes / 6;
+        DeploymentGraph.Builder builder = new DeploymentGraph.Builder();
+        for (int i = 0; i < nodes; i++) {
+            builder.addNode("node" + i);
+            int layer = i / width;
+            if (layer < 5) {
+                for (int j = 1 + random.nextInt(3); j > 0; j--) {
+                    builder.addDependency("node" + i, "node" + Math.min(nodes - 1, (layer + 1) * width + random.nextInt(width)));
+                }
+            }
+        }
+        return builder.build();
+    }//EoM
+
+}//EoC
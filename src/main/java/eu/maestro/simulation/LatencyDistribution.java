@@ -0,0 +1,42 @@
+package eu.maestro.simulation;
+
+import java.util.Random;
+
+/**
+ * Distribution of the duration of a phase, in milliseconds, or of another
+ * quantity of the simulation such as the size of an image in bytes.
+ *
+ * @author Panagiotis Gouvas
+ */
+public interface LatencyDistribution {
+
+    long sample(Random random);
+
+    static LatencyDistribution fixed(long millis) {
+        return random -> millis;
+    }//EoM
+
+    static LatencyDistribution uniform(long min, long max) {
+        return random -> min + (long) (random.nextDouble() * (max - min));
+    }//EoM
+
+    static LatencyDistribution exponential(double mean) {
+        return random -> (long) (-mean * Math.log(1 - random.nextDouble()));
+    }//EoM
+
+    /**
+     * Normal distribution truncated at zero.
+     */
+    static LatencyDistribution normal(double mean, double deviation) {
+        return random -> Math.max(0, Math.round(mean + deviation * random.nextGaussian()));
+    }//EoM
+
+    /**
+     * Log-normal distribution with the given median; sigma is the standard
+     * deviation of the logarithm.
+     */
+    static LatencyDistribution lognormal(double median, double sigma) {
+        return random -> Math.round(median * Math.exp(sigma * random.nextGaussian()));
+    }//EoM
+
+}//EoI
@@ -0,0 +1,115 @@
+package eu.maestro.simulation;
+
+import eu.maestro.time.Cancellable;
+import eu.maestro.time.Scheduler;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A pipe of fixed bandwidth shared equally by the transfers in flight
+ * (processor sharing): alone a transfer gets the whole bandwidth, with n
+ * transfers each gets a n-th of it. Time is that of the scheduler.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class SimulatedLink {
+
+    private final Scheduler scheduler;
+    private final double bytesPerMilli;
+    private final List<Transfer> transfers = new ArrayList<>();
+    private long updated = 0;
+    private Cancellable next;
+    private long bytes = 0;
+
+    /**
+     * @param bandwidth bytes per second
+     */
+    public SimulatedLink(Scheduler scheduler, long bandwidth) {
+        this.scheduler = scheduler;
+        this.bytesPerMilli = bandwidth / 1000.0;
+    }//EoCon
+
+    /**
+     * @return completes once the bytes have gone through the link
+     */
+    public synchronized CompletableFuture<Void> transfer(long size) {
+        Transfer transfer = new Transfer(size);
+        bytes += size;
+        drain();
+        transfers.add(transfer);
+        reschedule();
+        return transfer.future;
+    }//EoM
+
+    //takes off every transfer the share of the time since the last update
+    private void drain() {
+        long now = scheduler.currentTimeMillis();
+        if (!transfers.isEmpty()) {
+            double share = (now - updated) * bytesPerMilli / transfers.size();
+            for (Transfer transfer : transfers) {
+                transfer.remaining -= share;
+            }
+        }
+        updated = now;
+    }//EoM
+
+    private void reschedule() {
+        if (next != null) {
+            next.cancel();
+            next = null;
+        }
+        if (transfers.isEmpty()) {
+            return;
+        }
+        double least = Double.MAX_VALUE;
+        for (Transfer transfer : transfers) {
+            least = Math.min(least, transfer.remaining);
+        }
+        next = scheduler.schedule(this::complete, (long) Math.ceil(Math.max(0, least) * transfers.size() / bytesPerMilli));
+    }//EoM
+
+    private void complete() {
+        List<Transfer> done = new ArrayList<>();
+        synchronized (this) {
+            next = null;
+            drain();
+            for (Iterator<Transfer> it = transfers.iterator(); it.hasNext();) {
+                Transfer transfer = it.next();
+                //a byte of slack for the rounding to whole milliseconds
+                if (transfer.remaining < 1) {
+                    it.remove();
+                    done.add(transfer);
+                }
+            }
+            reschedule();
+        }
+        for (Transfer transfer : done) {
+            transfer.future.complete(null);
+        }
+    }//EoM
+
+    public synchronized int getActive() {
+        return transfers.size();
+    }//EoM
+
+    /**
+     * @return the bytes of all transfers so far
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }//EoM
+
+    private static final class Transfer {
+
+        private double remaining;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Transfer(long size) {
+            this.remaining = size;
+        }//EoCon
+
+    }//EoC
+
+}//EoC
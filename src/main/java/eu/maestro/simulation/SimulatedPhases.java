@@ -0,0 +1,61 @@
+package eu.maestro.simulation;
+
+import eu.maestro.agent.Agent;
+import eu.maestro.agent.AgentPhases;
+import eu.maestro.agent.Phase;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Phases that only take time: every phase completes after a duration drawn
+ * from its latency distribution. With a link, a download instead transfers an
+ * image of a size drawn from the image size distribution through the link,
+ * so downloads running together slow each other down.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class SimulatedPhases implements AgentPhases {
+
+    private final Map<Phase, LatencyDistribution> latencies;
+    private final Random random;
+    private final SimulatedLink link;
+    private final LatencyDistribution imagesizes;
+    private final Map<Agent, Long> imagebytes = new IdentityHashMap<>();
+
+    public SimulatedPhases(Map<Phase, LatencyDistribution> latencies, Random random) {
+        this(latencies, random, null, null);
+    }//EoCon
+
+    /**
+     * @param link the pipe all downloads share
+     * @param imagesizes distribution of the image sizes, in bytes
+     */
+    public SimulatedPhases(Map<Phase, LatencyDistribution> latencies, Random random, SimulatedLink link, LatencyDistribution imagesizes) {
+        this.latencies = new EnumMap<>(latencies);
+        this.random = random;
+        this.link = link;
+        this.imagesizes = imagesizes;
+    }//EoCon
+
+    @Override
+    public CompletableFuture<Void> execute(Phase phase, Agent agent) {
+        if (phase == Phase.DOWNLOAD && link != null) {
+            return link.transfer(getImageBytes(agent));
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        LatencyDistribution latency = latencies.get(phase);
+        agent.getScheduler().schedule(() -> done.complete(null), latency == null ? 0 : latency.sample(random));
+        return done;
+    }//EoM
+
+    /**
+     * @return the size of the image of the agent, drawn once
+     */
+    public synchronized long getImageBytes(Agent agent) {
+        return imagebytes.computeIfAbsent(agent, key -> imagesizes == null ? 0 : imagesizes.sample(random));
+    }//EoM
+
+}//EoC
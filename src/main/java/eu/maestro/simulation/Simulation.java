@@ -0,0 +1,213 @@
+package eu.maestro.simulation;
+
+import static eu.maestro.agent.Agent.EMULATE_MAX_CHECKIMAGE_MILLISECONDS;
+import static eu.maestro.agent.Agent.EMULATE_MAX_DOWNLOADFILE_MILLISECONDS;
+import static eu.maestro.agent.Agent.EMULATE_MAX_INITIALIZATION_TIME_MILLISECONDS;
+import static eu.maestro.agent.Agent.EMULATE_MAX_STARTIMAGE_MILLISECONDS;
+import eu.maestro.agent.AgentPhases;
+import eu.maestro.agent.DownloadScheduler;
+import eu.maestro.agent.Phase;
+import eu.maestro.metrics.DeploymentTimeline;
+import eu.maestro.metrics.MaestroMetrics;
+import eu.maestro.orchestrator.Orchestrator;
+import eu.maestro.store.StatusStore;
+import eu.maestro.time.SimulatedScheduler;
+import eu.maestro.util.DeploymentGraph;
+import eu.maestro.util.TopologyGenerator;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a deployment through the regular Orchestrator and Agent logic on a
+ * virtual clock. Phases only take their sampled duration and the status store
+ * is a local, in-JVM cache, so a large topology is simulated in a fraction of
+ * its real duration and a run is replayed exactly from its seed.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class Simulation {
+
+    public static final String LOCAL_CONFIGURATION = "infinispan-local.xml";
+
+    private final long seed;
+    private final Map<Phase, LatencyDistribution> latencies = new EnumMap<>(Phase.class);
+    //downloads go through a shared link when a bandwidth is set
+    private long bandwidth = 0;
+    private LatencyDistribution imagesizes;
+    //downloads are ordered by a DownloadScheduler when a concurrency is set
+    private int downloadconcurrency = 0;
+    private long downloadbudget = 0;
+    private boolean prefetch = false;
+    private boolean pushscheduling = Boolean.getBoolean(Orchestrator.PUSH_SCHEDULING_PROPERTY);
+
+    /**
+     * Starts with the fixed EMULATE_MAX_* durations for every phase.
+     */
+    public Simulation(long seed) {
+        this.seed = seed;
+        latencies.put(Phase.INITIALIZE, LatencyDistribution.fixed(EMULATE_MAX_INITIALIZATION_TIME_MILLISECONDS));
+        latencies.put(Phase.DOWNLOAD, LatencyDistribution.fixed(EMULATE_MAX_DOWNLOADFILE_MILLISECONDS));
+        latencies.put(Phase.START, LatencyDistribution.fixed(EMULATE_MAX_STARTIMAGE_MILLISECONDS));
+        latencies.put(Phase.CHECK, LatencyDistribution.fixed(EMULATE_MAX_CHECKIMAGE_MILLISECONDS));
+    }//EoCon
+
+    public Simulation setLatency(Phase phase, LatencyDistribution latency) {
+        latencies.put(phase, latency);
+        return this;
+    }//EoM
+
+    /**
+     * Downloads transfer their image through one link shared by all agents,
+     * instead of taking the DOWNLOAD latency.
+     *
+     * @param bandwidth bytes per second of the link
+     * @param imagesizes distribution of the image sizes, in bytes
+     */
+    public Simulation setLink(long bandwidth, LatencyDistribution imagesizes) {
+        this.bandwidth = bandwidth;
+        this.imagesizes = imagesizes;
+        return this;
+    }//EoM
+
+    /**
+     * Orders the downloads with a DownloadScheduler; without one every agent
+     * downloads as soon as it gets to it.
+     *
+     * @param concurrency downloads running at once
+     * @param budget bytes per second admitted, 0 for no budget
+     * @param prefetch queue the download when the initialization starts
+     */
+    public Simulation setDownloadScheduler(int concurrency, long budget, boolean prefetch) {
+        this.downloadconcurrency = concurrency;
+        this.downloadbudget = budget;
+        this.prefetch = prefetch;
+        return this;
+    }//EoM
+
+    /**
+     * Has the orchestrator dispatch the starts, see
+     * Orchestrator.setPushScheduling().
+     */
+    public Simulation setPushScheduling(boolean pushscheduling) {
+        this.pushscheduling = pushscheduling;
+        return this;
+    }//EoM
+
+    /**
+     * Simulates the deployment on the calling thread until every agent and
+     * the orchestrator have terminated.
+     */
+    public Result run(DeploymentGraph graph, String deploymentid) throws IOException {
+        return run(graph, null, deploymentid);
+    }//EoM
+
+    /**
+     * Simulates the deployment of graph, then its redeployment as revision
+     * once everything has settled.
+     *
+     * @return the result of the redeployment, measured from its start
+     */
+    public Result run(DeploymentGraph graph, DeploymentGraph revision, String deploymentid) throws IOException {
+        //keeps the local store up for the whole run
+        StatusStore store = StatusStore.acquire(LOCAL_CONFIGURATION);
+        try {
+            long begin = System.nanoTime();
+            SimulatedScheduler scheduler = new SimulatedScheduler(seed);
+            SimulatedPhases simulated = new SimulatedPhases(latencies, scheduler.getRandom(), bandwidth > 0 ? new SimulatedLink(scheduler, bandwidth) : null, imagesizes);
+            AgentPhases phases = downloadconcurrency > 0 ? new DownloadScheduler(simulated, downloadconcurrency, downloadbudget, prefetch, simulated::getImageBytes) : simulated;
+            Orchestrator orchestrator = new Orchestrator(graph, deploymentid, scheduler, phases);
+            orchestrator.setPushScheduling(pushscheduling);
+            long[] finish = new long[1];
+            CompletableFuture<Boolean> completion = orchestrator.start();
+            completion.thenRun(() -> finish[0] = scheduler.currentTimeMillis());
+            scheduler.run();
+            if (revision != null) {
+                begin = System.nanoTime();
+                long start = scheduler.currentTimeMillis();
+                long events = scheduler.getProcessedEvents();
+                Orchestrator previous = orchestrator;
+                orchestrator = new Orchestrator(revision, deploymentid, scheduler, phases);
+                orchestrator.setPushScheduling(pushscheduling);
+                completion = orchestrator.redeploy(previous);
+                completion.thenRun(() -> finish[0] = scheduler.currentTimeMillis() - start);
+                scheduler.run();
+                return new Result(completion.getNow(false), finish[0], scheduler.getProcessedEvents() - events, (System.nanoTime() - begin) / 1000000, orchestrator.getTimeline());
+            }
+            return new Result(completion.getNow(false), finish[0], scheduler.getProcessedEvents(), (System.nanoTime() - begin) / 1000000, orchestrator.getTimeline());
+        } finally {
+            store.release();
+        }
+    }//EoM
+
+    /**
+     * Usage: Simulation nodes [arity] [seed]. Simulates a balanced tree with
+     * exponentially distributed download times and prints the phase latencies,
+     * plus the timeline of small trees.
+     */
+    public static void main(String[] args) throws IOException {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int arity = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        Logger.getLogger("eu.maestro").setLevel(Level.WARNING);
+
+        Simulation simulation = new Simulation(seed).setLatency(Phase.DOWNLOAD, LatencyDistribution.exponential(EMULATE_MAX_DOWNLOADFILE_MILLISECONDS));
+        Result result = simulation.run(TopologyGenerator.kary(nodes, arity), "simulation-" + seed);
+        System.out.println(result);
+        System.out.println(MaestroMetrics.getInstance());
+        if (nodes <= 64) {
+            System.out.println(result.getTimeline().dump());
+        }
+    }//EoM
+
+    public static class Result {
+
+        private final boolean completed;
+        private final long deploymentMillis;
+        private final long events;
+        private final long wallMillis;
+        private final DeploymentTimeline timeline;
+
+        public Result(boolean completed, long deploymentMillis, long events, long wallMillis, DeploymentTimeline timeline) {
+            this.completed = completed;
+            this.deploymentMillis = deploymentMillis;
+            this.events = events;
+            this.wallMillis = wallMillis;
+            this.timeline = timeline;
+        }
+
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return virtual time from the start of the deployment until it
+         * completed, failed or timed out
+         */
+        public long getDeploymentMillis() {
+            return deploymentMillis;
+        }
+
+        public long getEvents() {
+            return events;
+        }
+
+        public long getWallMillis() {
+            return wallMillis;
+        }
+
+        public DeploymentTimeline getTimeline() {
+            return timeline;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" + "completed=" + completed + ", deploymentMillis=" + deploymentMillis + ", events=" + events + ", wallMillis=" + wallMillis + '}';
+        }
+
+    }//EoC
+
+}//EoC
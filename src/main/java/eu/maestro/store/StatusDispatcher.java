@@ -0,0 +1,70 @@
+package eu.maestro.store;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.event.CacheEntryEvent;
+
+/**
+ * The single cache listener of a StatusStore. It hands every status change to
+ * the watchers of its key and of its deployment, so the cost of a write does
+ * not grow with the number of waiting agents.
+ *
+ * @author Panagiotis Gouvas
+ */
+@Listener(clustered = true)
+public class StatusDispatcher {
+
+    private static final StatusWatcher[] NONE = new StatusWatcher[0];
+
+    private final ConcurrentHashMap<Object, StatusWatcher[]> watchers = new ConcurrentHashMap<>();
+
+    @CacheEntryCreated
+    @CacheEntryModified
+    public void onStatusChange(CacheEntryEvent<StatusKey, Integer> event) {
+        if (!event.isPre() && event.getValue() != null) {
+            dispatch(event.getKey(), event.getValue());
+        }
+    }//EoM
+
+    void dispatch(StatusKey key, int status) {
+        for (StatusWatcher watcher : watchers.getOrDefault(key, NONE)) {
+            watcher.onStatus(key, status);
+        }
+        for (StatusWatcher watcher : watchers.getOrDefault(key.getDeploymentid(), NONE)) {
+            watcher.onStatus(key, status);
+        }
+    }//EoM
+
+    //subject is a StatusKey or a deployment id
+    void add(Object subject, StatusWatcher watcher) {
+        watchers.compute(subject, (ignored, current) -> {
+            if (current == null) {
+                return new StatusWatcher[]{watcher};
+            }
+            StatusWatcher[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = watcher;
+            return updated;
+        });
+    }//EoM
+
+    void remove(Object subject, StatusWatcher watcher) {
+        watchers.computeIfPresent(subject, (ignored, current) -> {
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == watcher) {
+                    if (current.length == 1) {
+                        return null;
+                    }
+                    StatusWatcher[] updated = new StatusWatcher[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    return updated;
+                }
+            }
+            return current;
+        });
+    }//EoM
+
+}//EoC
@@ -0,0 +1,104 @@
+package eu.maestro.store;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Collections;
+import java.util.Set;
+import org.infinispan.commons.io.UnsignedNumeric;
+import org.infinispan.commons.marshall.AdvancedExternalizer;
+import org.infinispan.distribution.group.Group;
+
+/**
+ * Key of a node status in the store: the deployment id plus the index of the
+ * node in its deployment. Keys are built once per node and reused for every
+ * read and write, and the hash code is precomputed.
+ *
+ * In caches with grouping enabled (infinispan-dist.xml) all keys of a
+ * deployment hash to the same owners, so the statuses of a deployment are
+ * read with a single remote call, or locally on an owner.
+ *
+ * @author Panagiotis Gouvas
+ */
+public final class StatusKey {
+
+    private final String deploymentid;
+    private final int index;
+    private final int hash;
+
+    public StatusKey(String deploymentid, int index) {
+        this.deploymentid = deploymentid.intern();
+        this.index = index;
+        this.hash = 31 * this.deploymentid.hashCode() + index;
+    }//EoCon
+
+    public String getDeploymentid() {
+        return deploymentid;
+    }//EoM
+
+    public int getIndex() {
+        return index;
+    }//EoM
+
+    @Group
+    public String getGroup() {
+        return deploymentid;
+    }//EoM
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }//EoM
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof StatusKey)) {
+            return false;
+        }
+        StatusKey other = (StatusKey) obj;
+        //deployment ids are interned
+        return index == other.index && hash == other.hash && deploymentid == other.deploymentid;
+    }//EoM
+
+    @Override
+    public String toString() {
+        return deploymentid + "_" + index + "_status";
+    }//EoM
+
+    /**
+     * Writes a key as the deployment id followed by a variable-length index,
+     * registered in infinispan.xml.
+     */
+    public static class Externalizer implements AdvancedExternalizer<StatusKey> {
+
+        private static final long serialVersionUID = 1L;
+
+        public static final int ID = 5100;
+
+        @Override
+        public Set<Class<? extends StatusKey>> getTypeClasses() {
+            return Collections.<Class<? extends StatusKey>>singleton(StatusKey.class);
+        }//EoM
+
+        @Override
+        public Integer getId() {
+            return ID;
+        }//EoM
+
+        @Override
+        public void writeObject(ObjectOutput output, StatusKey key) throws IOException {
+            output.writeUTF(key.deploymentid);
+            UnsignedNumeric.writeUnsignedInt(output, key.index);
+        }//EoM
+
+        @Override
+        public StatusKey readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            return new StatusKey(input.readUTF(), UnsignedNumeric.readUnsignedInt(input));
+        }//EoM
+
+    }//EoC
+
+}//EoC
@@ -0,0 +1,266 @@
+package eu.maestro.store;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import org.infinispan.Cache;
+import org.infinispan.distribution.DistributionManager;
+import org.infinispan.manager.DefaultCacheManager;
+
+/**
+ * Status store shared by every Agent and Orchestrator of the JVM. The
+ * underlying cache manager is created by the first acquire() and stopped when
+ * the last holder calls release().
+ *
+ * Statuses are stored as Integer values under precomputed StatusKeys, so the
+ * hot path neither builds nor compares strings, and the boxed status codes
+ * come from the Integer cache.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class StatusStore {
+
+    private static final Logger logger = Logger.getLogger(StatusStore.class.getName());
+
+    public static final String CONFIGURATION_PROPERTY = "maestro.infinispan.config";
+    public static final String DEFAULT_CONFIGURATION = "infinispan.xml";
+    //distributed cache with the statuses of a deployment grouped on the same owners
+    public static final String DISTRIBUTED_CONFIGURATION = "infinispan-dist.xml";
+
+    //agents of a clustered store commit through the group-commit StatusWriter unless set to false
+    public static final String BATCHING_PROPERTY = "maestro.status.batching";
+
+    //no status has been committed for the key
+    public static final int STATUS_UNKNOWN = 0;
+
+    private static StatusStore instance = null;
+    private static int references = 0;
+
+    private final String configuration;
+    private final DefaultCacheManager cachemngr;
+    private final Cache<StatusKey, Integer> cache;
+    private final StatusDispatcher dispatcher = new StatusDispatcher();
+    private final StatusWriter writer;
+    private final boolean batching;
+    //requests sent to the cache, for getReads() and getWrites()
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+
+    private StatusStore(String configuration) throws IOException {
+        this.configuration = configuration;
+        cachemngr = new DefaultCacheManager(configuration);
+        cache = cachemngr.getCache();
+        cache.addListener(dispatcher);
+        writer = new StatusWriter(this);
+        //a local cache has no round trips to save
+        batching = cache.getCacheConfiguration().clustering().cacheMode().isClustered()
+                && Boolean.parseBoolean(System.getProperty(BATCHING_PROPERTY, "true"));
+    }//EoCon
+
+    /**
+     * Returns the shared store, starting it with the configured file if this
+     * is the first holder. Every successful acquire() must be paired with
+     * exactly one release().
+     */
+    public static synchronized StatusStore acquire() throws IOException {
+        return acquire(instance != null ? instance.configuration : System.getProperty(CONFIGURATION_PROPERTY, DEFAULT_CONFIGURATION));
+    }//EoM
+
+    /**
+     * Like acquire(), with an explicit Infinispan configuration file.
+     *
+     * @throws IllegalStateException if the store is already running with
+     * another configuration
+     */
+    public static synchronized StatusStore acquire(String configuration) throws IOException {
+        if (instance == null) {
+            logger.info("Starting status store with " + configuration);
+            instance = new StatusStore(configuration);
+        } else if (!instance.configuration.equals(configuration)) {
+            throw new IllegalStateException("Status store is running with " + instance.configuration + ", not " + configuration);
+        }
+        references++;
+        return instance;
+    }//EoM
+
+    public void release() {
+        synchronized (StatusStore.class) {
+            if (instance != this || references == 0) {
+                logger.warning("Release of a status store that is not held");
+                return;
+            }
+            if (--references == 0) {
+                logger.info("Stopping status store");
+                instance = null;
+                cachemngr.stop();
+            }
+        }
+    }//EoM
+
+    public static synchronized int getReferences() {
+        return references;
+    }//EoM
+
+    public Cache<StatusKey, Integer> getCache() {
+        return cache;
+    }//EoM
+
+    public void put(StatusKey key, int status) {
+        writes.increment();
+        cache.put(key, status);
+    }//EoM
+
+    /**
+     * Writes the statuses in one batch.
+     */
+    public void putAll(Map<StatusKey, Integer> statuses) {
+        writes.increment();
+        cache.putAll(statuses);
+    }//EoM
+
+    /**
+     * Commits a transition through the group-commit writer if the store
+     * batches, otherwise with advance(). Either way the key never moves
+     * backwards.
+     *
+     * @return completes once acknowledged with the status now stored
+     */
+    public CompletableFuture<Integer> commit(StatusKey key, int status) {
+        return batching ? writer.write(key, status) : advance(key, status);
+    }//EoM
+
+    public boolean isBatching() {
+        return batching;
+    }//EoM
+
+    public StatusWriter getWriter() {
+        return writer;
+    }//EoM
+
+    /**
+     * @return the reads sent to the cache since the store started, a batched
+     * read counting once
+     */
+    public long getReads() {
+        return reads.sum();
+    }//EoM
+
+    /**
+     * @return the writes sent to the cache since the store started, a
+     * batched write, including a batch of the StatusWriter, counting once
+     */
+    public long getWrites() {
+        return writes.sum() + writer.getBatches();
+    }//EoM
+
+    public void remove(StatusKey key) {
+        writes.increment();
+        cache.remove(key);
+    }//EoM
+
+    /**
+     * Moves the key forward to the given status with an acknowledged,
+     * asynchronous conditional write, so a status can never go backwards:
+     * positive statuses only increase and a negative (terminal) status is
+     * never replaced. Concurrent writers are resolved by retrying the
+     * compare-and-swap against the value they lost to.
+     *
+     * @return completes, once the write has been acknowledged by the cache,
+     * with the status now stored for the key; that is the given status unless
+     * the key had already moved past it
+     */
+    public CompletableFuture<Integer> advance(StatusKey key, int status) {
+        reads.increment();
+        return cache.getAsync(key).thenCompose(current -> advance(key, current, status));
+    }//EoM
+
+    private CompletableFuture<Integer> advance(StatusKey key, Integer current, int status) {
+        if (current == null) {
+            writes.increment();
+            return cache.putIfAbsentAsync(key, status).thenCompose(previous -> previous == null
+                    ? CompletableFuture.completedFuture(status)
+                    : advance(key, previous, status));
+        }
+        if (!isForward(current, status)) {
+            return CompletableFuture.completedFuture(current);
+        }
+        writes.increment();
+        return cache.replaceAsync(key, current, status).thenCompose(replaced -> replaced
+                ? CompletableFuture.completedFuture(status)
+                : advance(key, status));
+    }//EoM
+
+    /**
+     * @return true if a key holding current may move to status
+     */
+    public static boolean isForward(int current, int status) {
+        return current == STATUS_UNKNOWN || (current > 0 && (status < 0 || status > current));
+    }//EoM
+
+    public int get(StatusKey key) {
+        reads.increment();
+        Integer status = cache.get(key);
+        return status == null ? STATUS_UNKNOWN : status;
+    }//EoM
+
+    /**
+     * Reads the statuses of the keys in one batch. With grouping the keys of
+     * a deployment share their owners, so this is a single remote call, or a
+     * local read on an owner.
+     *
+     * @return the committed statuses; keys without a status are absent
+     */
+    public Map<StatusKey, Integer> getAll(StatusKey... keys) {
+        reads.increment();
+        return cache.getAdvancedCache().getAll(new HashSet<>(Arrays.asList(keys)));
+    }//EoM
+
+    /**
+     * @return true if this member holds a copy of the statuses of the
+     * deployment, always the case for local and replicated caches
+     */
+    public boolean isOwner(String deploymentid) {
+        DistributionManager distribution = cache.getAdvancedCache().getDistributionManager();
+        return distribution == null || distribution.getCacheTopology().isReadOwner(new StatusKey(deploymentid, 0));
+    }//EoM
+
+    /**
+     * Notifies the watcher of every change of the key until unwatch().
+     * Register before reading the current value, so no change is missed.
+     */
+    public void watch(StatusKey key, StatusWatcher watcher) {
+        dispatcher.add(key, watcher);
+    }//EoM
+
+    public void unwatch(StatusKey key, StatusWatcher watcher) {
+        dispatcher.remove(key, watcher);
+    }//EoM
+
+    /**
+     * Notifies the watcher of every status change of the deployment until
+     * unwatchDeployment().
+     */
+    public void watchDeployment(String deploymentid, StatusWatcher watcher) {
+        dispatcher.add(deploymentid, watcher);
+    }//EoM
+
+    public void unwatchDeployment(String deploymentid, StatusWatcher watcher) {
+        dispatcher.remove(deploymentid, watcher);
+    }//EoM
+
+    /**
+     * Builds the keys of nodes 0..size-1 of a deployment.
+     */
+    public static StatusKey[] keys(String deploymentid, int size) {
+        StatusKey[] keys = new StatusKey[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = new StatusKey(deploymentid, i);
+        }
+        return keys;
+    }//EoM
+
+}//EoC
@@ -0,0 +1,14 @@
+package eu.maestro.store;
+
+/**
+ * Receives the status changes of the keys or deployments it watches in the
+ * StatusStore. Called on the thread that delivers the cache event, so
+ * implementations must not block.
+ *
+ * @author Panagiotis Gouvas
+ */
+public interface StatusWatcher {
+
+    void onStatus(StatusKey key, int status);
+
+}//EoI
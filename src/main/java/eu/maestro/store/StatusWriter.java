@@ -0,0 +1,275 @@
+package eu.maestro.store;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import org.infinispan.commons.marshall.AdvancedExternalizer;
+import org.infinispan.functional.EntryView.ReadWriteEntryView;
+import org.infinispan.functional.FunctionalMap.ReadWriteMap;
+import org.infinispan.functional.impl.FunctionalMapImpl;
+import org.infinispan.functional.impl.ReadWriteMapImpl;
+
+/**
+ * Group commit of status transitions. Writes submitted while earlier batches
+ * are still being acknowledged are collected and sent together, so the
+ * batches grow with the load and the round trip time of the store instead of
+ * with a fixed window, and a lone write goes out at once. At most
+ * maestro.status.writer.inflight batches of up to maestro.status.writer.batch
+ * keys are in flight.
+ *
+ * A batch is one functional read-write command over all of its keys, so it
+ * costs one round trip per owner instead of one per key. The command applies
+ * the rule of StatusStore.advance() on the owners under the lock of each key,
+ * so a batch never moves a key backwards, a late write of a cancelled agent
+ * included. Writes of the same key waiting for the same batch are coalesced
+ * into the later status, and a key is never in two batches at once, so the
+ * writes of a key are applied in order. The command blocks until it is
+ * acknowledged, so batches are sent from writer threads of their own, never
+ * from the threads of the agents.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class StatusWriter {
+
+    public static final String BATCH_PROPERTY = "maestro.status.writer.batch";
+    public static final String INFLIGHT_PROPERTY = "maestro.status.writer.inflight";
+    public static final int DEFAULT_BATCH = 1024;
+    public static final int DEFAULT_INFLIGHT = 2;
+
+    private static final AtomicInteger threads = new AtomicInteger();
+    //the batches in flight, bounded by the inflight of each writer
+    private static final ExecutorService io = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "maestro-status-writer-" + threads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ReadWriteMap<StatusKey, Integer> map;
+    private final int batch;
+    private final int inflight;
+    private final LinkedHashMap<StatusKey, Write> pending = new LinkedHashMap<>();
+    private final Set<StatusKey> writing = new HashSet<>();
+    private int batches = 0;
+    private long writes = 0;
+    private long coalesced = 0;
+    private long flushed = 0;
+
+    /**
+     * Writer configured from the maestro.status.writer.* system properties.
+     */
+    public StatusWriter(StatusStore store) {
+        this(store, Integer.getInteger(BATCH_PROPERTY, DEFAULT_BATCH), Integer.getInteger(INFLIGHT_PROPERTY, DEFAULT_INFLIGHT));
+    }//EoCon
+
+    /**
+     * @param store the store written to
+     * @param batch the most keys in one batch
+     * @param inflight the most batches waiting for their acknowledgement
+     */
+    public StatusWriter(StatusStore store, int batch, int inflight) {
+        if (batch < 1 || inflight < 1) {
+            throw new IllegalArgumentException("Batch size and batches in flight must be positive");
+        }
+        this.map = ReadWriteMapImpl.create(FunctionalMapImpl.create(store.getCache().getAdvancedCache()));
+        this.batch = batch;
+        this.inflight = inflight;
+    }//EoCon
+
+    /**
+     * @return completes, once the batch of the write has been acknowledged,
+     * with the status now stored for the key; that is the given status unless
+     * a later write of the key was coalesced with it or the key had already
+     * moved past it
+     */
+    public CompletableFuture<Integer> write(StatusKey key, int status) {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        synchronized (this) {
+            writes++;
+            Write write = pending.get(key);
+            if (write == null) {
+                pending.put(key, new Write(status, future));
+            } else {
+                if (StatusStore.isForward(write.status, status)) {
+                    write.status = status;
+                }
+                write.futures.add(future);
+                coalesced++;
+            }
+        }
+        flush();
+        return future;
+    }//EoM
+
+    private void flush() {
+        while (true) {
+            Map<StatusKey, Write> sent = new HashMap<>();
+            synchronized (this) {
+                if (batches >= inflight || pending.isEmpty()) {
+                    return;
+                }
+                for (Iterator<Map.Entry<StatusKey, Write>> it = pending.entrySet().iterator(); it.hasNext() && sent.size() < batch;) {
+                    Map.Entry<StatusKey, Write> entry = it.next();
+                    //waits for the batch that is writing the key
+                    if (writing.add(entry.getKey())) {
+                        it.remove();
+                        sent.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                if (sent.isEmpty()) {
+                    return;
+                }
+                batches++;
+                flushed++;
+            }
+            send(sent);
+        }
+    }//EoM
+
+    private void send(Map<StatusKey, Write> sent) {
+        try {
+            io.execute(() -> {
+                Map<StatusKey, Integer> statuses = new HashMap<>();
+                for (Map.Entry<StatusKey, Write> entry : sent.entrySet()) {
+                    statuses.put(entry.getKey(), entry.getValue().status);
+                }
+                Map<StatusKey, Integer> stored = new HashMap<>();
+                Throwable error = null;
+                try {
+                    map.evalMany(statuses, Advance.INSTANCE).forEach(stored::putAll);
+                } catch (RuntimeException ex) {
+                    error = ex;
+                }
+                complete(sent, stored, error);
+            });
+        } catch (RejectedExecutionException ex) {
+            complete(sent, Collections.<StatusKey, Integer>emptyMap(), ex);
+        }
+    }//EoM
+
+    private void complete(Map<StatusKey, Write> sent, Map<StatusKey, Integer> stored, Throwable error) {
+        synchronized (this) {
+            batches--;
+            writing.removeAll(sent.keySet());
+        }
+        for (Map.Entry<StatusKey, Write> entry : sent.entrySet()) {
+            Integer status = stored.get(entry.getKey());
+            for (CompletableFuture<Integer> future : entry.getValue().futures) {
+                if (status != null) {
+                    future.complete(status);
+                } else {
+                    future.completeExceptionally(error != null ? error : new IllegalStateException("No result for " + entry.getKey()));
+                }
+            }
+        }
+        flush();
+    }//EoM
+
+    /**
+     * @return the writes submitted so far
+     */
+    public synchronized long getWrites() {
+        return writes;
+    }//EoM
+
+    /**
+     * @return the writes merged into a pending write of the same key
+     */
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }//EoM
+
+    /**
+     * @return the batches sent so far
+     */
+    public synchronized long getBatches() {
+        return flushed;
+    }//EoM
+
+    public synchronized int getPending() {
+        return pending.size();
+    }//EoM
+
+    @Override
+    public synchronized String toString() {
+        return "StatusWriter{" + "writes=" + writes + ", batches=" + flushed + ", coalesced=" + coalesced + ", pending=" + pending.size() + ", inflight=" + batches + '}';
+    }//EoM
+
+    private static final class Write {
+
+        private int status;
+        private final List<CompletableFuture<Integer>> futures = new ArrayList<>(1);
+
+        private Write(int status, CompletableFuture<Integer> future) {
+            this.status = status;
+            futures.add(future);
+        }//EoCon
+
+    }//EoC
+
+    /**
+     * Moves one key of a batch forward on its owners, as StatusStore.advance()
+     * does, and returns the key with the status now stored. Stateless, so it
+     * is marshalled as its id only, registered in infinispan.xml.
+     */
+    public static final class Advance implements BiFunction<Integer, ReadWriteEntryView<StatusKey, Integer>, Map<StatusKey, Integer>> {
+
+        static final Advance INSTANCE = new Advance();
+
+        private Advance() {
+        }//EoCon
+
+        @Override
+        public Map<StatusKey, Integer> apply(Integer status, ReadWriteEntryView<StatusKey, Integer> view) {
+            Integer current = view.find().orElse(null);
+            if (current == null || StatusStore.isForward(current, status)) {
+                view.set(status);
+                current = status;
+            }
+            return Collections.singletonMap(view.key(), current);
+        }//EoM
+
+        public static class Externalizer implements AdvancedExternalizer<Advance> {
+
+            private static final long serialVersionUID = 1L;
+
+            public static final int ID = 5101;
+
+            @Override
+            public Set<Class<? extends Advance>> getTypeClasses() {
+                return Collections.<Class<? extends Advance>>singleton(Advance.class);
+            }//EoM
+
+            @Override
+            public Integer getId() {
+                return ID;
+            }//EoM
+
+            @Override
+            public void writeObject(ObjectOutput output, Advance advance) throws IOException {
+            }//EoM
+
+            @Override
+            public Advance readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+                return INSTANCE;
+            }//EoM
+
+        }//EoC
+
+    }//EoC
+
+}//EoC
@@ -0,0 +1,15 @@
+package eu.maestro.time;
+
+/**
+ * Handle of a scheduled task.
+ *
+ * @author Panagiotis Gouvas
+ */
+public interface Cancellable {
+
+    /**
+     * @return false if the task has already run or was cancelled before
+     */
+    boolean cancel();
+
+}//EoI
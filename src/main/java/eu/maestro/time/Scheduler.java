@@ -0,0 +1,22 @@
+package eu.maestro.time;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Clock and task scheduler that drives agents and orchestrators. Agents never
+ * sleep; every wait is expressed as a task scheduled after a delay, so the
+ * same logic runs in real time (SystemScheduler) or in virtual time
+ * (SimulatedScheduler).
+ *
+ * @author Panagiotis Gouvas
+ */
+public interface Scheduler extends Executor {
+
+    long currentTimeMillis();
+
+    /**
+     * Runs the task once the delay has elapsed.
+     */
+    Cancellable schedule(Runnable task, long delayMillis);
+
+}//EoI
@@ -0,0 +1,122 @@
+package eu.maestro.time;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Discrete-event scheduler with a virtual clock. Tasks run one at a time on
+ * the thread that calls run(), ordered by due time and then by submission,
+ * and the clock jumps straight to the next due task. Given the same seed and
+ * the same inputs a run is replayed exactly.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class SimulatedScheduler implements Scheduler {
+
+    private final PriorityQueue<Event> queue = new PriorityQueue<>();
+    private final Random random;
+    private long now = 0;
+    private long sequence = 0;
+    private long processed = 0;
+
+    public SimulatedScheduler(long seed) {
+        this.random = new Random(seed);
+    }//EoCon
+
+    /**
+     * Source of randomness of the simulation; only to be used from tasks.
+     */
+    public Random getRandom() {
+        return random;
+    }//EoM
+
+    @Override
+    public synchronized long currentTimeMillis() {
+        return now;
+    }//EoM
+
+    @Override
+    public void execute(Runnable task) {
+        schedule(task, 0);
+    }//EoM
+
+    @Override
+    public synchronized Cancellable schedule(Runnable task, long delayMillis) {
+        Event event = new Event(now + Math.max(0, delayMillis), sequence++, task);
+        queue.add(event);
+        return event;
+    }//EoM
+
+    /**
+     * Runs tasks until none is left.
+     */
+    public void run() {
+        runUntil(Long.MAX_VALUE);
+    }//EoM
+
+    /**
+     * Runs the tasks due up to the given virtual time.
+     *
+     * @return true if tasks, possibly cancelled ones, remain after that time
+     */
+    public boolean runUntil(long time) {
+        Event event;
+        while ((event = next(time)) != null) {
+            event.task.run();
+        }
+        synchronized (this) {
+            return !queue.isEmpty();
+        }
+    }//EoM
+
+    private synchronized Event next(long time) {
+        Event event;
+        while ((event = queue.peek()) != null && event.time <= time) {
+            queue.poll();
+            event.done = true;
+            if (!event.cancelled) {
+                now = event.time;
+                processed++;
+                return event;
+            }
+        }
+        return null;
+    }//EoM
+
+    public synchronized long getProcessedEvents() {
+        return processed;
+    }//EoM
+
+    private class Event implements Comparable<Event>, Cancellable {
+
+        private final long time;
+        private final long order;
+        private final Runnable task;
+        private boolean cancelled = false;
+        private boolean done = false;
+
+        private Event(long time, long order, Runnable task) {
+            this.time = time;
+            this.order = order;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            int compare = Long.compare(time, other.time);
+            return compare != 0 ? compare : Long.compare(order, other.order);
+        }
+
+        //cancelled events are dropped when they reach the head of the queue
+        @Override
+        public boolean cancel() {
+            synchronized (SimulatedScheduler.this) {
+                boolean pending = !cancelled && !done;
+                cancelled = true;
+                return pending;
+            }
+        }
+
+    }//EoC
+
+}//EoC
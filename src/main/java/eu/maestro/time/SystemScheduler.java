@@ -0,0 +1,60 @@
+package eu.maestro.time;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Real-time scheduler. Delays are tracked by a single TimingWheel shared by
+ * the JVM; the tasks themselves run on the given executor. Once that
+ * executor has been shut down, as the executor of a finished deployment is,
+ * late tasks such as deliveries to subscribers or timers that were not
+ * cancelled run on the calling thread instead of being rejected.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class SystemScheduler implements Scheduler {
+
+    public static final String TICK_PROPERTY = "maestro.timer.tick.millis";
+    public static final String BUCKETS_PROPERTY = "maestro.timer.buckets";
+    public static final long DEFAULT_TICK_MILLIS = 10;
+    public static final int DEFAULT_BUCKETS = 512;
+
+    private static TimingWheel timer = null;
+
+    private final Executor executor;
+
+    public SystemScheduler(Executor executor) {
+        this.executor = executor;
+    }//EoCon
+
+    public static synchronized TimingWheel getTimer() {
+        if (timer == null) {
+            timer = new TimingWheel("maestro-timer", Long.getLong(TICK_PROPERTY, DEFAULT_TICK_MILLIS), Integer.getInteger(BUCKETS_PROPERTY, DEFAULT_BUCKETS));
+        }
+        return timer;
+    }//EoM
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }//EoM
+
+    @Override
+    public void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            if (!(executor instanceof ExecutorService) || !((ExecutorService) executor).isShutdown()) {
+                throw ex;
+            }
+            task.run();
+        }
+    }//EoM
+
+    @Override
+    public Cancellable schedule(Runnable task, long delayMillis) {
+        return getTimer().schedule(() -> execute(task), delayMillis);
+    }//EoM
+
+}//EoC
@@ -0,0 +1,219 @@
+package eu.maestro.time;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hashed timing wheel. Deadlines are hashed by tick into a ring of buckets,
+ * each a doubly-linked list, and a deadline more than one revolution away
+ * keeps the number of remaining rounds. Scheduling and cancelling are O(1)
+ * and lock-free for the caller: new and cancelled timeouts are handed to the
+ * single ticker thread through queues, which links, unlinks and expires them
+ * once per tick. A timeout cancelled before the ticker links it, or cancelled
+ * in the narrow window while it is being linked, stays in its bucket until
+ * that bucket is reached. Expiry is accurate to one tick, which suits the
+ * deadlines of hundreds of thousands of agents that are mostly cancelled
+ * before they fire.
+ *
+ * Expired tasks run on the ticker thread and must only hand work off.
+ *
+ * @author Panagiotis Gouvas
+ */
+public class TimingWheel {
+
+    private static final Logger logger = Logger.getLogger(TimingWheel.class.getName());
+
+    private static final int INIT = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final long tickNanos;
+    private final int mask;
+    private final Bucket[] wheel;
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private final Thread ticker;
+    private long tick = 0;
+
+    /**
+     * @param tickMillis resolution of the wheel
+     * @param buckets size of the ring, rounded up to a power of two
+     */
+    public TimingWheel(String name, long tickMillis, int buckets) {
+        int size = Integer.highestOneBit(Math.max(1, buckets - 1)) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        this.mask = size - 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        ticker = new Thread(this::work, name);
+        ticker.setDaemon(true);
+        ticker.start();
+    }//EoCon
+
+    /**
+     * Runs the task on the ticker thread once the delay has elapsed.
+     */
+    public Cancellable schedule(Runnable task, long delayMillis) {
+        long deadline = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        Timeout timeout = new Timeout(task, deadline);
+        pending.incrementAndGet();
+        scheduled.add(timeout);
+        return timeout;
+    }//EoM
+
+    /**
+     * @return timeouts scheduled and neither expired nor cancelled
+     */
+    public long getPending() {
+        return pending.get();
+    }//EoM
+
+    private void work() {
+        while (true) {
+            long deadline = (tick + 1) * tickNanos;
+            long sleep = deadline - (System.nanoTime() - startNanos);
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException ex) {
+                    logger.log(Level.SEVERE, null, ex);
+                    return;
+                }
+                continue;
+            }
+            unlinkCancelled();
+            transferScheduled();
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+    }//EoM
+
+    private void transferScheduled() {
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.state.get() == CANCELLED) {
+                continue;
+            }
+            //never into a bucket that has already been expired
+            long ticks = Math.max(timeout.deadline / tickNanos, tick);
+            timeout.rounds = (ticks - tick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(timeout);
+            timeout.linked = true;
+        }
+    }//EoM
+
+    private void unlinkCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }//EoM
+
+    private final class Timeout implements Cancellable {
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(INIT);
+        //set by the ticker thread once the timeout is in a bucket
+        private volatile boolean linked = false;
+        //owned by the ticker thread
+        private long rounds;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(INIT, CANCELLED)) {
+                return false;
+            }
+            pending.decrementAndGet();
+            //a timeout still waiting for transfer is dropped by the ticker
+            if (linked) {
+                cancelled.add(this);
+            }
+            return true;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(INIT, EXPIRED)) {
+                return;
+            }
+            pending.decrementAndGet();
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                logger.log(Level.SEVERE, null, ex);
+            }
+        }
+
+    }//EoC
+
+    private static final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.rounds <= 0 && timeout.deadline <= deadline) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.rounds > 0) {
+                    timeout.rounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.next = null;
+            timeout.prev = null;
+            timeout.bucket = null;
+        }
+
+    }//EoC
+
+}//EoC
@@ -0,0 +1,329 @@
+package eu.maestro.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable, compiled dependency graph of a deployment. Nodes are addressed by
+ * a dense index; adjacency is kept in arrays in both directions, together with
+ * a topological order (dependencies first), the topological level of every
+ * node (nodes without dependencies are on level 0) and its depth, the
+ * longest chain of dependents above it (nodes nobody depends on have depth
+ * 0). A node may be the dependency of several others, so diamonds are
+ * expressed without duplicating nodes. All traversals are iterative. Every
+ * node may carry the image and the configuration it is deployed with, and
+ * the readiness probe that tells when it has started.
+ *
+ * The arrays returned by the getters are shared and must not be modified.
+ *
+ * @author Panagiotis Gouvas
+ */
+public final class DeploymentGraph {
+
+    private static final int[] NONE = new int[0];
+
+    private final String[] names;
+    private final String[] images;
+    private final String[] configs;
+    private final String[] probes;
+    private final Map<String, Integer> indexes;
+    private final int[][] dependencies;
+    private final int[][] dependents;
+    private final int[] order;
+    private final int[] levels;
+    private final int[] depths;
+    private final int levelcount;
+
+    private DeploymentGraph(String[] names, String[] images, String[] configs, String[] probes, Map<String, Integer> indexes, int[][] dependencies) {
+        this.names = names;
+        this.images = images;
+        this.configs = configs;
+        this.probes = probes;
+        this.indexes = indexes;
+        this.dependencies = dependencies;
+        int size = names.length;
+
+        //reverse adjacency
+        int[] indegree = new int[size];
+        for (int[] deps : dependencies) {
+            for (int dep : deps) {
+                indegree[dep]++;
+            }
+        }
+        dependents = new int[size][];
+        for (int i = 0; i < size; i++) {
+            dependents[i] = indegree[i] == 0 ? NONE : new int[indegree[i]];
+        }
+        int[] fill = new int[size];
+        for (int i = 0; i < size; i++) {
+            for (int dep : dependencies[i]) {
+                dependents[dep][fill[dep]++] = i;
+            }
+        }
+
+        //Kahn's algorithm from the nodes without dependencies upwards
+        int[] pending = new int[size];
+        order = new int[size];
+        levels = new int[size];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < size; i++) {
+            pending[i] = dependencies[i].length;
+            if (pending[i] == 0) {
+                order[tail++] = i;
+            }
+        }
+        int maxlevel = -1;
+        while (head < tail) {
+            int node = order[head++];
+            maxlevel = Math.max(maxlevel, levels[node]);
+            for (int parent : dependents[node]) {
+                levels[parent] = Math.max(levels[parent], levels[node] + 1);
+                if (--pending[parent] == 0) {
+                    order[tail++] = parent;
+                }
+            }
+        }
+        if (tail != size) {
+            List<String> cyclic = new ArrayList<>();
+            for (int i = 0; i < size && cyclic.size() < 10; i++) {
+                if (pending[i] > 0) {
+                    cyclic.add(names[i]);
+                }
+            }
+            throw new IllegalArgumentException("Cyclic dependency between " + (size - tail) + " nodes, including " + cyclic);
+        }
+        levelcount = maxlevel + 1;
+
+        //dependents come later in the order, so walk it backwards
+        depths = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            int node = order[i];
+            for (int parent : dependents[node]) {
+                depths[node] = Math.max(depths[node], depths[parent] + 1);
+            }
+        }
+    }//EoCon
+
+    /**
+     * Compiles a tree whose children are the dependencies of their parent.
+     * Nodes are identified by their data, so a name that appears under several
+     * parents becomes a single shared dependency. Its dependencies are the
+     * children of all of its occurrences, and its image, configuration and
+     * probe are taken from the first occurrence that declares them. The root
+     * gets index 0 and the nodes are expanded in pre-order, but the children
+     * of a node get their indexes together when it is expanded: a tree
+     * root(a(a1, a2), b) is indexed root, a, b, a1, a2, where
+     * TreeUtil.listifyTree gives root, a, a1, a2, b.
+     */
+    public static DeploymentGraph compile(Node<String> tree) {
+        Builder builder = new Builder();
+        Deque<Node<String>> stack = new ArrayDeque<>();
+        //a node object shared by several parents is expanded once
+        Set<Node<String>> expanded = Collections.newSetFromMap(new IdentityHashMap<>());
+        builder.addNode(tree.getData());
+        builder.describe(tree);
+        stack.push(tree);
+        while (!stack.isEmpty()) {
+            Node<String> node = stack.pop();
+            if (!expanded.add(node)) {
+                continue;
+            }
+            List<Node<String>> children = node.getChildren();
+            for (Node<String> child : children) {
+                builder.addNode(child.getData());
+                builder.describe(child);
+                builder.addDependency(node.getData(), child.getData());
+            }
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+        return builder.build();
+    }//EoM
+
+    public int size() {
+        return names.length;
+    }//EoM
+
+    public String getName(int index) {
+        return names[index];
+    }//EoM
+
+    /**
+     * @return the image reference of the node, or null if none was declared
+     */
+    public String getImage(int index) {
+        return images[index];
+    }//EoM
+
+    /**
+     * @return the configuration of the node, or null if none was declared
+     */
+    public String getConfig(int index) {
+        return configs[index];
+    }//EoM
+
+    /**
+     * @return the readiness probe of the node, e.g. tcp://host:port or
+     * http://host:port/path, or null if none was declared
+     */
+    public String getProbe(int index) {
+        return probes[index];
+    }//EoM
+
+    /**
+     * @return the index of the node, or -1 if there is no such node
+     */
+    public int indexOf(String name) {
+        Integer index = indexes.get(name);
+        return index == null ? -1 : index;
+    }//EoM
+
+    public int[] getDependencies(int index) {
+        return dependencies[index];
+    }//EoM
+
+    public int[] getDependents(int index) {
+        return dependents[index];
+    }//EoM
+
+    /**
+     * @return all nodes, every node after all of its dependencies
+     */
+    public int[] getTopologicalOrder() {
+        return order;
+    }//EoM
+
+    public int getLevel(int index) {
+        return levels[index];
+    }//EoM
+
+    /**
+     * @return the number of dependents that have to start one after the
+     * other once the node has started, before the top of the graph can start
+     */
+    public int getDepth(int index) {
+        return depths[index];
+    }//EoM
+
+    public int getLevelCount() {
+        return levelcount;
+    }//EoM
+
+    @Override
+    public String toString() {
+        return "DeploymentGraph{" + "nodes=" + names.length + ", levels=" + levelcount + '}';
+    }//EoM
+
+    /**
+     * Collects nodes and dependency edges. Nodes are indexed in the order they
+     * are first added.
+     */
+    public static class Builder {
+
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<int[]> dependencies = new ArrayList<>();
+        private final Map<String, String> images = new HashMap<>();
+        private final Map<String, String> configs = new HashMap<>();
+        private final Map<String, String> probes = new HashMap<>();
+        private int[] counts = new int[16];
+
+        public Builder addNode(String name) {
+            if (!indexes.containsKey(name)) {
+                indexes.put(name, names.size());
+                names.add(name);
+                dependencies.add(NONE);
+                if (counts.length < names.size()) {
+                    counts = Arrays.copyOf(counts, counts.length * 2);
+                }
+            }
+            return this;
+        }//EoM
+
+        public Builder setImage(String name, String image) {
+            addNode(name);
+            images.put(name, image);
+            return this;
+        }//EoM
+
+        public Builder setConfig(String name, String config) {
+            addNode(name);
+            configs.put(name, config);
+            return this;
+        }//EoM
+
+        public Builder setProbe(String name, String probe) {
+            addNode(name);
+            probes.put(name, probe);
+            return this;
+        }//EoM
+
+        //copies the metadata of a tree node unless already declared
+        private void describe(Node<String> node) {
+            if (node.getImage() != null) {
+                images.putIfAbsent(node.getData(), node.getImage());
+            }
+            if (node.getConfig() != null) {
+                configs.putIfAbsent(node.getData(), node.getConfig());
+            }
+            if (node.getProbe() != null) {
+                probes.putIfAbsent(node.getData(), node.getProbe());
+            }
+        }//EoM
+
+        /**
+         * Declares that node needs dependency to be started first. Both nodes
+         * are added if missing; a repeated edge is ignored.
+         */
+        public Builder addDependency(String node, String dependency) {
+            addNode(node);
+            addNode(dependency);
+            int from = indexes.get(node);
+            int to = indexes.get(dependency);
+            int[] deps = dependencies.get(from);
+            int count = counts[from];
+            for (int i = 0; i < count; i++) {
+                if (deps[i] == to) {
+                    return this;
+                }
+            }
+            if (count == deps.length) {
+                deps = Arrays.copyOf(deps, Math.max(4, count * 2));
+                dependencies.set(from, deps);
+            }
+            deps[count] = to;
+            counts[from] = count + 1;
+            return this;
+        }//EoM
+
+        /**
+         * @throws IllegalArgumentException if the dependencies form a cycle
+         */
+        public DeploymentGraph build() {
+            int size = names.size();
+            int[][] adjacency = new int[size][];
+            String[] nodeimages = new String[size];
+            String[] nodeconfigs = new String[size];
+            String[] nodeprobes = new String[size];
+            for (int i = 0; i < size; i++) {
+                adjacency[i] = counts[i] == 0 ? NONE : Arrays.copyOf(dependencies.get(i), counts[i]);
+                nodeimages[i] = images.get(names.get(i));
+                nodeconfigs[i] = configs.get(names.get(i));
+                nodeprobes[i] = probes.get(names.get(i));
+            }
+            return new DeploymentGraph(names.toArray(new String[size]), nodeimages, nodeconfigs, nodeprobes, new HashMap<>(indexes), adjacency);
+        }//EoM
+
+    }//EoC
+
+}//EoC
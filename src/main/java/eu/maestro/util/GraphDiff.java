@@ -0,0 +1,168 @@
+package eu.maestro.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Difference between two revisions of a deployment graph, with nodes matched
+ * by name. A node of the next revision is changed if it is new, or if its
+ * image, its configuration or the names of its dependencies differ. A changed
+ * node has to be restarted, and so has every node that depends on it,
+ * directly or transitively; all other nodes can be kept running.
+ *
+ * Only the restarted nodes are traversed beyond the comparison, so the work of
+ * a rollout follows the size of the change.
+ *
+ * @author Panagiotis Gouvas
+ */
+public final class GraphDiff {
+
+    private final DeploymentGraph previous;
+    private final DeploymentGraph next;
+    //per node of next, its index in previous or -1 if it is new
+    private final int[] matches;
+    private final boolean[] restarted;
+    private final int[] restartorder;
+    private final int changed;
+    private final List<String> removed;
+
+    private GraphDiff(DeploymentGraph previous, DeploymentGraph next, int[] matches, boolean[] restarted, int[] restartorder, int changed, List<String> removed) {
+        this.previous = previous;
+        this.next = next;
+        this.matches = matches;
+        this.restarted = restarted;
+        this.restartorder = restartorder;
+        this.changed = changed;
+        this.removed = removed;
+    }//EoCon
+
+    public static GraphDiff compare(DeploymentGraph previous, DeploymentGraph next) {
+        int size = next.size();
+        int[] matches = new int[size];
+        boolean[] restarted = new boolean[size];
+        int[] stack = new int[size];
+        int top = 0;
+        int changed = 0;
+        for (int index = 0; index < size; index++) {
+            matches[index] = previous.indexOf(next.getName(index));
+            if (isChanged(previous, next, matches[index], index)) {
+                restarted[index] = true;
+                stack[top++] = index;
+                changed++;
+            }
+        }
+        //the dependents of a restarted node have to be restarted after it
+        int count = top;
+        while (top > 0) {
+            int node = stack[--top];
+            for (int dependent : next.getDependents(node)) {
+                if (!restarted[dependent]) {
+                    restarted[dependent] = true;
+                    stack[top++] = dependent;
+                    count++;
+                }
+            }
+        }
+        int[] restartorder = new int[count];
+        int fill = 0;
+        for (int index : next.getTopologicalOrder()) {
+            if (restarted[index]) {
+                restartorder[fill++] = index;
+            }
+        }
+        List<String> removed = new ArrayList<>();
+        for (int index = 0; index < previous.size(); index++) {
+            if (next.indexOf(previous.getName(index)) < 0) {
+                removed.add(previous.getName(index));
+            }
+        }
+        return new GraphDiff(previous, next, matches, restarted, restartorder, changed, Collections.unmodifiableList(removed));
+    }//EoM
+
+    private static boolean isChanged(DeploymentGraph previous, DeploymentGraph next, int match, int index) {
+        if (match < 0) {
+            return true;
+        }
+        if (!equals(previous.getImage(match), next.getImage(index)) || !equals(previous.getConfig(match), next.getConfig(index))) {
+            return true;
+        }
+        int[] before = previous.getDependencies(match);
+        int[] after = next.getDependencies(index);
+        if (before.length != after.length) {
+            return true;
+        }
+        String[] names = new String[before.length];
+        for (int i = 0; i < before.length; i++) {
+            names[i] = previous.getName(before[i]);
+        }
+        Arrays.sort(names);
+        for (int dependency : after) {
+            if (Arrays.binarySearch(names, next.getName(dependency)) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }//EoM
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }//EoM
+
+    public DeploymentGraph getPrevious() {
+        return previous;
+    }//EoM
+
+    public DeploymentGraph getNext() {
+        return next;
+    }//EoM
+
+    /**
+     * @return the index in the previous graph of a node of the next graph,
+     * or -1 if the node is new
+     */
+    public int getPreviousIndex(int index) {
+        return matches[index];
+    }//EoM
+
+    public boolean isRestarted(int index) {
+        return restarted[index];
+    }//EoM
+
+    /**
+     * @return the nodes of the next graph to restart, every node after all of
+     * its dependencies
+     */
+    public int[] getRestarted() {
+        return restartorder;
+    }//EoM
+
+    /**
+     * @return the number of nodes that changed themselves, without their
+     * dependents
+     */
+    public int getChanged() {
+        return changed;
+    }//EoM
+
+    /**
+     * @return the names of the nodes of the previous graph that are gone
+     */
+    public List<String> getRemoved() {
+        return removed;
+    }//EoM
+
+    /**
+     * @return true if nothing has to be restarted or removed
+     */
+    public boolean isEmpty() {
+        return restartorder.length == 0 && removed.isEmpty();
+    }//EoM
+
+    @Override
+    public String toString() {
+        return "GraphDiff{" + "changed=" + changed + ", restarted=" + restartorder.length + ", kept=" + (next.size() - restartorder.length) + ", removed=" + removed.size() + '}';
+    }//EoM
+
+}//EoC
@@ -16,6 +16,14 @@ public class Node<T> {
 
     private Node<T> parent = null;
 
+    //deployment metadata, compared by GraphDiff to find the changed nodes
+    private String image = null;
+
+    private String config = null;
+
+    //not compared, a new readiness probe does not restart the node
+    private String probe = null;
+
     public Node(T data) {
         this.data = data;
     }
@@ -51,6 +59,44 @@ public class Node<T> {
         return parent;
     }
 
+    /**
+     * @return the image reference of the node, or null if none was declared
+     */
+    public String getImage() {
+        return image;
+    }
+
+    public Node<T> setImage(String image) {
+        this.image = image;
+        return this;
+    }
+
+    /**
+     * @return the configuration the node is started with, e.g. its
+     * environment, or null if none was declared
+     */
+    public String getConfig() {
+        return config;
+    }
+
+    public Node<T> setConfig(String config) {
+        this.config = config;
+        return this;
+    }
+
+    /**
+     * @return the readiness probe of the node, tcp://host:port or
+     * http://host:port/path, or null if none was declared
+     */
+    public String getProbe() {
+        return probe;
+    }
+
+    public Node<T> setProbe(String probe) {
+        this.probe = probe;
+        return this;
+    }
+
     @Override
     public String toString() {
         return "Node{" + "data=" + data + ", children=" + children + '}';
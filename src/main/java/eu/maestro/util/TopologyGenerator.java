@@ -0,0 +1,118 @@
+package eu.maestro.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic deployment topologies of any size. Node names are "node" plus the
+ * index, node0 is the root that nobody depends on, and every other node is
+ * the dependency of exactly one parent with a lower index, so the nodes
+ * without dependencies are the leaves. The graphs are built without
+ * recursion and are fine at 100k nodes.
+ *
+ * @author Panagiotis Gouvas
+ */
+public final class TopologyGenerator {
+
+    //the root depends on every other node
+    public static final String WIDE = "wide";
+    //a chain, every node depends on the next one
+    public static final String DEEP = "deep";
+    //a balanced tree filled breadth-first
+    public static final String KARY = "kary";
+    //a random recursive tree
+    public static final String RANDOM = "random";
+
+    private TopologyGenerator() {
+    }//EoCon
+
+    /**
+     * @param arity children per node of a KARY topology
+     * @param seed of a RANDOM topology
+     * @throws IllegalArgumentException if the shape is unknown or size is
+     * not positive
+     */
+    public static DeploymentGraph create(String shape, int size, int arity, long seed) {
+        switch (shape) {
+            case WIDE:
+                return wide(size);
+            case DEEP:
+                return deep(size);
+            case KARY:
+                return kary(size, arity);
+            case RANDOM:
+                return random(size, seed);
+            default:
+                throw new IllegalArgumentException("Unknown topology " + shape);
+        }
+    }//EoM
+
+    public static DeploymentGraph wide(int size) {
+        return kary(size, Math.max(1, size - 1));
+    }//EoM
+
+    public static DeploymentGraph deep(int size) {
+        return kary(size, 1);
+    }//EoM
+
+    /**
+     * The parent of node i is node (i - 1) / arity.
+     */
+    public static DeploymentGraph kary(int size, int arity) {
+        if (arity < 1) {
+            throw new IllegalArgumentException("Invalid arity " + arity);
+        }
+        DeploymentGraph.Builder builder = builder(size);
+        for (int i = 1; i < size; i++) {
+            builder.addDependency("node" + ((i - 1) / arity), "node" + i);
+        }
+        return builder.build();
+    }//EoM
+
+    /**
+     * The parent of node i is drawn uniformly from the nodes before it, which
+     * gives a depth that grows with the logarithm of the size and a few
+     * nodes with many children. The same seed gives the same graph.
+     */
+    public static DeploymentGraph random(int size, long seed) {
+        Random random = new Random(seed);
+        DeploymentGraph.Builder builder = builder(size);
+        for (int i = 1; i < size; i++) {
+            builder.addDependency("node" + random.nextInt(i), "node" + i);
+        }
+        return builder.build();
+    }//EoM
+
+    /**
+     * The generated graph as a tree of Nodes, for the code that works on
+     * trees: every node gets its dependencies as children, in the order of
+     * their indexes, with its image, configuration and probe.
+     *
+     * @throws IllegalArgumentException if a node is the dependency of more
+     * than one node, so the graph is not a tree
+     */
+    public static Node<String> toTree(DeploymentGraph graph) {
+        List<Node<String>> nodes = new ArrayList<>(graph.size());
+        for (int index = 0; index < graph.size(); index++) {
+            nodes.add(new Node<>(graph.getName(index)).setImage(graph.getImage(index)).setConfig(graph.getConfig(index)).setProbe(graph.getProbe(index)));
+        }
+        for (int index = 0; index < graph.size(); index++) {
+            if (graph.getDependents(index).length > 1) {
+                throw new IllegalArgumentException(graph.getName(index) + " has more than one dependent");
+            }
+            for (int dependency : graph.getDependencies(index)) {
+                nodes.get(index).addChild(nodes.get(dependency));
+            }
+        }
+        return nodes.get(0);
+    }//EoM
+
+    private static DeploymentGraph.Builder builder(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Invalid size " + size);
+        }
+        return new DeploymentGraph.Builder().addNode("node0");
+    }//EoM
+
+}//EoC
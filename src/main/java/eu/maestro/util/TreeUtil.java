@@ -1,6 +1,8 @@
 package eu.maestro.util;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -14,37 +16,46 @@ public class TreeUtil {
     private static final Logger logger = Logger.getLogger(TreeUtil.class.getName());
 
     public static Node<String> searchTree(Node<String> node, String nodename) {
-        if (((Node<String>) node).getData().equals(nodename)) {
-            return node;
-        } else {
-            for (Node nd : node.getChildren()) {
-                Node<String> temp = searchTree(nd, nodename);
-                if (temp!=null) return temp;
+        Deque<Node<String>> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node<String> current = stack.pop();
+            if (current.getData().equals(nodename)) {
+                return current;
             }
+            pushChildren(current, stack);
         }
         return null;
     }//EoM
 
     public static List<String> listifyTree(Node<String> node) {
         List<String> list = new ArrayList<>();
-        list.add(node.getData());
-        for (Node nd : node.getChildren()) {
-            appendtoListedTree(nd, list);
+        Deque<Node<String>> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node<String> current = stack.pop();
+            list.add(current.getData());
+            pushChildren(current, stack);
         }
         return list;
     }//EoM    
 
-    private static List<String> appendtoListedTree(Node<String> node, List<String> list) {
-        list.add(node.getData());
-        for (Node nd : node.getChildren()) {
-            appendtoListedTree(nd, list);
+    //children are pushed in reverse so that they are popped in pre-order
+    private static <T> void pushChildren(Node<T> node, Deque<Node<T>> stack) {
+        List<Node<T>> children = node.getChildren();
+        for (int i = children.size() - 1; i >= 0; i--) {
+            stack.push(children.get(i));
         }
-        return list;
     }//EoM       
 
     public static <T> void printTree(Node<T> node) {
-        logger.info((String) node.getData());
-        node.getChildren().forEach(each -> printTree(each));
+        Deque<Node<T>> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node<T> current = stack.pop();
+            logger.info((String) current.getData());
+            pushChildren(current, stack);
+        }
     }//EoM    
 
 }//EoClass